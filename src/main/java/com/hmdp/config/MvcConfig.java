@@ -2,8 +2,11 @@ package com.hmdp.config;
 
 import com.hmdp.interceptor.LoginInterceptor;
 import com.hmdp.interceptor.RefreshTokenInterceptor;
+import com.hmdp.interceptor.RouteAccess;
+import com.hmdp.interceptor.SeckillAdmissionInterceptor;
+import com.hmdp.utils.LoginSessionManager;
+import com.hmdp.utils.SeckillAdmission;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -19,7 +22,10 @@ public class MvcConfig implements WebMvcConfigurer {
 
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessionManager loginSessionManager;
+
+    @Resource
+    private SeckillAdmission seckillAdmission;
 
     /**
      * 添加拦截器
@@ -28,17 +34,16 @@ public class MvcConfig implements WebMvcConfigurer {
      */
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        //拦截所有请求 刷新用户redis中存储的信息 按照顺序添加拦截器基本可以使得其拦截顺序确定 也可以设置order
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).order(0);
-        //判断用户是否存在 不存在就对特定路径拦截
-        registry.addInterceptor(new LoginInterceptor()).excludePathPatterns(
-                "/user/code",
-                "/user/login",
-                "/blog/hot",
-                "/shop/**",
-                "/shop-type/**",
-                "/upload/**",
-                "/voucher/**"
-        ).order(1);
+        //除匿名路由外的请求 登记token对应的用户 按照顺序添加拦截器基本可以使得其拦截顺序确定 也可以设置order
+        registry.addInterceptor(new RefreshTokenInterceptor(loginSessionManager))
+                .excludePathPatterns(RouteAccess.PUBLIC.getPatterns()).order(0);
+        //必须登录的路由 判断用户是否存在 不存在就拦截
+        registry.addInterceptor(new LoginInterceptor())
+                .addPathPatterns(RouteAccess.REQUIRED.getPatterns())
+                .excludePathPatterns(RouteAccess.PUBLIC.getPatterns())
+                .excludePathPatterns(RouteAccess.OPTIONAL.getPatterns()).order(1);
+        //秒杀准入 在登录校验之后执行 未登录的请求已经被拦截 不会消耗令牌
+        registry.addInterceptor(new SeckillAdmissionInterceptor(seckillAdmission))
+                .addPathPatterns("/voucher-order/seckill/**").order(2);
     }
 }
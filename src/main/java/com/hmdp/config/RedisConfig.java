@@ -0,0 +1,45 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BloomFilterManager;
+import com.hmdp.utils.CacheInvalidationBus;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SignedTokenService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * @author wzh
+ * @date 2023年12月03日 10:35
+ * Description: redis发布订阅相关配置
+ */
+@Configuration
+public class RedisConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       CacheInvalidationBus cacheInvalidationBus,
+                                                                       BloomFilterManager bloomFilterManager,
+                                                                       SeckillSoldOutRegistry seckillSoldOutRegistry,
+                                                                       ObjectProvider<SignedTokenService> signedTokenService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //订阅缓存失效频道
+        container.addMessageListener(cacheInvalidationBus, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //订阅布隆过滤器新增数据的频道
+        container.addMessageListener(bloomFilterManager, new ChannelTopic(BLOOM_ADD_CHANNEL));
+        //订阅秒杀券售罄的频道
+        container.addMessageListener(seckillSoldOutRegistry, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        //订阅登录令牌吊销的频道 只有signed模式下才有
+        signedTokenService.ifAvailable(service -> container.addMessageListener(service, new ChannelTopic(LOGIN_REVOKE_CHANNEL)));
+        return container;
+    }
+}
@@ -0,0 +1,90 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.LoginSessionManager;
+import com.hmdp.utils.SeckillAdmission;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * @author wzh
+ * @date 2023年12月02日 15:40
+ * Description: 运行指标查询 缓存命中率等
+ */
+@RestController
+@RequestMapping("/monitor")
+public class MonitorController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private SeckillAdmission seckillAdmission;
+
+    @Resource
+    private LoginSessionManager loginSessionManager;
+
+    /**
+     * 查询一级缓存按key前缀的命中/未命中次数
+     */
+    @GetMapping("/cache")
+    public Result cacheStats() {
+        return Result.ok(cacheClient.localCacheStats());
+    }
+
+    /**
+     * 查询缓存重建线程池的队列深度 耗时与失败次数
+     */
+    @GetMapping("/cache/rebuild")
+    public Result cacheRebuildStats() {
+        return Result.ok(cacheClient.rebuildStats());
+    }
+
+    /**
+     * 查询某个前缀下key的剩余过期时间分布 确认过期时间已经打散
+     *
+     * @param prefix 缓存key前缀
+     * @param bucket 每个区间的秒数
+     */
+    @GetMapping("/cache/expiry")
+    public Result cacheExpiry(@RequestParam(value = "prefix", defaultValue = CACHE_SHOP_KEY) String prefix,
+                              @RequestParam(value = "bucket", defaultValue = "60") Long bucket,
+                              @RequestParam(value = "max", defaultValue = "100000") Integer max) {
+        return Result.ok(cacheClient.expiryHistogram(prefix, bucket, max));
+    }
+
+    /**
+     * 查询秒杀订单逐条写入与批量写入的订单数 耗时和吞吐量
+     */
+    @GetMapping("/seckill/order")
+    public Result seckillOrderStats() {
+        return Result.ok(voucherOrderService.orderWriteStats());
+    }
+
+    /**
+     * 查询秒杀准入放行和拒绝的请求数
+     */
+    @GetMapping("/seckill/admission")
+    public Result seckillAdmissionStats() {
+        return Result.ok(seckillAdmission.stats());
+    }
+
+    /**
+     * 查询登录会话缓存的命中情况和批量刷新有效期的次数
+     */
+    @GetMapping("/login/session")
+    public Result loginSessionStats() {
+        return Result.ok(loginSessionManager.stats());
+    }
+}
@@ -10,6 +10,8 @@ import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -76,12 +78,13 @@ public class ShopController {
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
+        // 根据类型分页查询 只查id 详情从缓存中批量获取
         Page<Shop> page = shopService.query()
+                .select("id")
                 .eq("type_id", typeId)
                 .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
         // 返回数据
-        return Result.ok(page.getRecords());
+        return Result.ok(shopService.queryByIds(toIds(page.getRecords())));
     }
 
     /**
@@ -96,11 +99,16 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
+        // 根据类型分页查询 只查id 详情从缓存中批量获取
         Page<Shop> page = shopService.query()
+                .select("id")
                 .like(StrUtil.isNotBlank(name), "name", name)
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 返回数据
-        return Result.ok(page.getRecords());
+        return Result.ok(shopService.queryByIds(toIds(page.getRecords())));
+    }
+
+    private List<Long> toIds(List<Shop> shops) {
+        return shops.stream().map(Shop::getId).collect(Collectors.toList());
     }
 }
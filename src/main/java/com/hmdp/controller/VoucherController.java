@@ -2,7 +2,9 @@ package com.hmdp.controller;
 
 
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
 import org.springframework.web.bind.annotation.*;
 
@@ -23,6 +25,9 @@ public class VoucherController {
     @Resource
     private IVoucherService voucherService;
 
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
     /**
      * 新增普通券
      * @param voucher 优惠券信息
@@ -45,6 +50,16 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 修改秒杀券的库存和起止时间
+     * @param seckillVoucher 秒杀信息
+     * @return 无
+     */
+    @PutMapping("seckill")
+    public Result updateSeckillVoucher(@RequestBody SeckillVoucher seckillVoucher) {
+        return seckillVoucherService.update(seckillVoucher);
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
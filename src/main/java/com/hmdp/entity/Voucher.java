@@ -90,6 +90,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private LocalDateTime endTime;
 
+    /**
+     * 秒杀库存分段数 大于1时redis中的库存拆分为多个计数器 用于超热点秒杀券
+     */
+    @TableField(exist = false)
+    private Integer segments;
+
     /**
      * 创建时间
      */
@@ -1,29 +1,25 @@
 package com.hmdp.interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
-import com.hmdp.dto.UserDTO;
-import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.LoginSessionManager;
 import com.hmdp.utils.UserHolder;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author wzh
  * @date 2023年06月02日 12:29
- * Description: 拦截器一号 用于判断并刷新用户存储在redis中的信息
+ * Description: 拦截器一号 用于判断并刷新用户存储在redis中的信息 查询和刷新有效期都交给LoginSessionManager
+ * 不在PUBLIC路由上执行 也不立即查询 第一次调用UserHolder.getUser()时才查询会话
  */
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessionManager loginSessionManager;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(LoginSessionManager loginSessionManager) {
+        this.loginSessionManager = loginSessionManager;
     }
 
     @Override
@@ -34,23 +30,9 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             // 用户不存在 拦截
             return true;
         }
-        //2 基于token获取redis中的用户
-        String key = RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
-
-        //3 判断用户是否存在
-        if (userMap.isEmpty()) {
-            //用户不存在 放行
-            return true;
-        }
-        //4 将查询到的hash数据转回user对象
-        UserDTO userDTO = BeanUtil.mapToBean(userMap, UserDTO.class, false);
-
-        //5 用户存在 存入ThreadLocal
-        UserHolder.saveUser(userDTO);
-        //6 刷新token有效期
-        stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
-        //7 放行
+        //2 登记按token查询用户 优先读本地缓存 有效期不足时由后台批量刷新
+        UserHolder.saveUserLoader(() -> loginSessionManager.getUser(token));
+        //3 放行
         return true;
     }
 
@@ -0,0 +1,39 @@
+package com.hmdp.interceptor;
+
+/**
+ * @author wzh
+ * @date 2024年01月22日 10:15
+ * Description: 路由的登录要求 决定拦截器链是否需要查询登录会话
+ * PUBLIC 匿名访问 不查询会话
+ * OPTIONAL 可匿名访问 登录用户只在第一次调用UserHolder.getUser()时查询会话
+ * REQUIRED 必须登录 由LoginInterceptor校验 其余所有路径都属于这一类 新增和修改优惠券等写操作都在这里
+ */
+public enum RouteAccess {
+
+    PUBLIC(
+            "/user/code",
+            "/user/login",
+            "/shop/**",
+            "/shop-type/**",
+            "/upload/**",
+            "/voucher/list/**"
+    ),
+
+    OPTIONAL(
+            "/blog/hot"
+    ),
+
+    REQUIRED(
+            "/**"
+    );
+
+    private final String[] patterns;
+
+    RouteAccess(String... patterns) {
+        this.patterns = patterns;
+    }
+
+    public String[] getPatterns() {
+        return patterns.clone();
+    }
+}
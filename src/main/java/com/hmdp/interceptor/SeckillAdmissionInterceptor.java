@@ -0,0 +1,53 @@
+package com.hmdp.interceptor;
+
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.UserHolder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * @author wzh
+ * @date 2024年01月06日 15:50
+ * Description: 秒杀准入拦截器 在登录校验之后 业务逻辑之前拒绝超出库存倍数的请求
+ * 未登录的请求由LoginInterceptor先行拦截 不会占用令牌桶
+ */
+public class SeckillAdmissionInterceptor implements HandlerInterceptor {
+
+    private final SeckillAdmission seckillAdmission;
+
+    public SeckillAdmissionInterceptor(SeckillAdmission seckillAdmission) {
+        this.seckillAdmission = seckillAdmission;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        //取出路径中的秒杀券id /voucher-order/seckill/{id}
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables == null ? null : variables.get("id");
+        UserDTO user = UserHolder.getUser();
+        if (!NumberUtil.isLong(id) || user == null) {
+            return true;
+        }
+        if (seckillAdmission.tryAdmit(Long.valueOf(id), user.getId())) {
+            return true;
+        }
+        //直接返回 不排队等待
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail("当前抢购人数过多 请稍后重试")));
+        return false;
+    }
+}
@@ -4,6 +4,9 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +19,11 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    Result createVoucherOrder(Long voucherId);
+    int createVoucherOrder(VoucherOrder voucherOrder);
+
+    Map<Long, Integer> createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    Result queryOrder(Long orderId);
+
+    Map<String, Object> orderWriteStats();
 }
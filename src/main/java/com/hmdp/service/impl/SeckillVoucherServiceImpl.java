@@ -1,10 +1,22 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillStockManager;
+import com.hmdp.utils.TransactionHooks;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_TTL;
 
 /**
  * <p>
@@ -17,4 +29,63 @@ import org.springframework.stereotype.Service;
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private SeckillStockManager seckillStockManager;
+
+    @Resource
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    /**
+     * 查询秒杀券的起止时间等信息 先查本地缓存再查redis 秒杀期间不会变化 不访问数据库
+     * 新增秒杀券和启动预热时写入缓存 缓存中没有时才查询数据库并写回
+     */
+    @Override
+    public SeckillVoucher queryById(Long voucherId) {
+        SeckillVoucher voucher = cacheClient.queryWithLogicalExpire(CACHE_SECKILL_VOUCHER_KEY, voucherId, SeckillVoucher.class,
+                this::getById, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES);
+        if (voucher != null) {
+            return voucher;
+        }
+        voucher = getById(voucherId);
+        if (voucher != null) {
+            cacheClient.setWithLogicalExpire(CACHE_SECKILL_VOUCHER_KEY + voucherId, voucher, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES);
+        }
+        return voucher;
+    }
+
+    /**
+     * 修改秒杀券的库存或起止时间 redis中的库存和时间一并覆盖 并清除所有节点的缓存和售罄标记
+     */
+    @Override
+    @Transactional
+    public Result update(SeckillVoucher seckillVoucher) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        if (voucherId == null) {
+            return Result.fail("秒杀券ID有误");
+        }
+        //1 更新数据库
+        if (!updateById(seckillVoucher)) {
+            return Result.fail("秒杀券不存在");
+        }
+        //2 事务提交后覆盖redis中的起止时间 传入库存时同时重置剩余库存 分段数保持不变
+        //没有传入库存时不能用数据库的库存覆盖 订单异步写入 数据库库存可能还没有扣减
+        SeckillVoucher voucher = getById(voucherId);
+        boolean resetStock = seckillVoucher.getStock() != null;
+        TransactionHooks.afterCommit(() -> {
+            voucher.setSegments(seckillStockManager.segmentsOf(voucherId));
+            if (resetStock) {
+                seckillStockManager.save(voucher);
+            } else {
+                seckillStockManager.saveTime(voucher);
+            }
+            //3 库存或时间已经变化 清除售罄标记
+            seckillSoldOutRegistry.clear(voucherId);
+        });
+        //4 删除缓存 事务提交后执行 同时广播给其他节点清除本地缓存
+        cacheClient.evict(CACHE_SECKILL_VOUCHER_KEY + voucherId);
+        return Result.ok();
+    }
 }
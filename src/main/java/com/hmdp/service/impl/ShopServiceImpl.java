@@ -9,9 +9,12 @@ import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.BloomFilterManager;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRebuildExecutor;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.TransactionHooks;
 import org.springframework.aop.ThrowsAdvice;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -19,8 +22,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -41,6 +43,12 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    @Resource
+    private BloomFilterManager bloomFilterManager;
+
     @Override
     public Result queryById(Long id) {
         //缓存穿透
@@ -52,13 +60,21 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
         //逻辑过期解决缓存穿透
         //Shop shop = queryWithLogicalExpire(id);
-        Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 10L, TimeUnit.SECONDS);
+        Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
         if (shop == null) return Result.fail("店铺Id不存在");
         else return Result.ok(shop);
     }
 
-    //启动线程的工具
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 批量查询店铺 列表页使用 一次MGET 未命中的一次listByIds
+     *
+     * @param ids 店铺id 结果按此顺序返回
+     * @return 店铺列表
+     */
+    @Override
+    public List<Shop> queryByIds(List<Long> ids) {
+        return cacheClient.queryBatchWithLogicalExpire(CACHE_SHOP_KEY, ids, Shop.class, this::listByIds, Shop::getId, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
+    }
 
     /**
      * 逻辑过期解决缓存击穿
@@ -95,8 +111,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             if (LocalDateTime.now().isBefore(expireTime)) {
                 return shop;
             }
-            //若已过期 启动线程重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+            //若已过期 提交到共享的重建线程池 提交失败时释放锁 继续返回旧数据
+            boolean submitted = cacheRebuildExecutor.submit(key, () -> {
                 try {
                     //重建缓存
                     this.saveShopToRedis(id, LOCK_SHOP_TTL);
@@ -107,6 +123,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                     unLock(lockKey);
                 }
             });
+            if (!submitted) {
+                unLock(lockKey);
+            }
         }
         //无论成功失败 都返回数据
         return shop;
@@ -216,12 +235,23 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         //1 更新数据库
         updateById(shop);
-        //2 删除缓存
-        String key = CACHE_SHOP_KEY + shop.getId();
-        stringRedisTemplate.delete(key);
+        //2 重写逻辑过期的缓存 事务提交后执行 同时广播给其他节点清除本地缓存
+        cacheClient.refreshWithLogicalExpire(CACHE_SHOP_KEY, shop.getId(), this::getById, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
         return Result.ok();
     }
 
+    /**
+     * 新增店铺后写入布隆过滤器 存在事务时提交后再写入
+     */
+    @Override
+    public boolean save(Shop shop) {
+        boolean success = super.save(shop);
+        if (success) {
+            TransactionHooks.afterCommit(() -> bloomFilterManager.add(BloomFilterManager.SHOP, shop.getId()));
+        }
+        return success;
+    }
+
     /**
      * 获取锁 使用到redis的setnx方法,相当于加锁
      *
@@ -1,8 +1,6 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
-import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -12,6 +10,8 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilterManager;
+import com.hmdp.utils.LoginSessionManager;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.SystemConstants;
@@ -23,8 +23,6 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -41,6 +39,24 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private BloomFilterManager bloomFilterManager;
+
+    @Resource
+    private LoginSessionManager loginSessionManager;
+
+    /**
+     * 新增用户后写入布隆过滤器
+     */
+    @Override
+    public boolean save(User user) {
+        boolean success = super.save(user);
+        if (success) {
+            bloomFilterManager.add(BloomFilterManager.USER, user.getId());
+        }
+        return success;
+    }
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         //1 校验手机号
@@ -82,25 +98,20 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user = createUserWithPhone(phone);
         }
 
-        //3.2 用户保存到redis
-        //a 随即生成token 作为登录令牌
-        String token = UUID.randomUUID().toString(true);
-        //b 将user对象转为hashmap
+        //3.2 创建登录会话 默认保存到redis 无状态模式下签发令牌
         UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        //因为stringRedisTemplate要求map的key value都要为string 类型 所以进行转换
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create().
-                        setIgnoreNullValue(true).
-                        setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
-        //c 存储
-        String tokenKey = RedisConstants.LOGIN_USER_KEY + token;
-        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
-        //d 设置有效期
-        stringRedisTemplate.expire(tokenKey, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+        String token = loginSessionManager.createSession(userDTO);
         //4 返回token
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token) {
+        //删除redis中的会话 无状态模式下吊销令牌
+        loginSessionManager.removeSession(token);
+        return Result.ok();
+    }
+
     private User createUserWithPhone(String phone) {
         User user = new User();
         //初始化数据
@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.text.UnicodeUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.hmdp.dto.Result;
@@ -11,15 +12,52 @@ import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IVoucherService;
-import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.BloomFilterManager;
+import com.hmdp.utils.DistributedLock;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillStockManager;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.javassist.tools.rmi.AppletServer;
 import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_FAILED_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_FAILED_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
 
 /**
  * <p>
@@ -29,6 +67,7 @@ import java.time.LocalDateTime;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
@@ -36,7 +75,87 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private RedisIdWorker redisIdWorker;
+    private IdGenerator idGenerator;
+
+    @Resource
+    private BloomFilterManager bloomFilterManager;
+
+    @Resource
+    private SeckillStockManager seckillStockManager;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    /**
+     * 带事务的代理对象 消费线程中拿不到AopContext 所以注入自身
+     */
+    @Lazy
+    @Resource
+    private IVoucherOrderService self;
+
+    /**
+     * 消费者名称 同一个节点重启后名称不变 才能处理自己崩溃前未确认的消息
+     */
+    @Value("${hmdp.seckill.consumer-name:${HOSTNAME:c1}}")
+    private String consumerName;
+
+    /**
+     * 每批最多写入的订单数 为1时逐条写入
+     */
+    @Value("${hmdp.seckill.order.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 读到第一条订单后最多再等待多久凑满一批 毫秒
+     */
+    @Value("${hmdp.seckill.order.linger:50}")
+    private long linger;
+
+    /**
+     * 同一条订单最多尝试写入几次 超过后转入死信stream 避免一直重试
+     */
+    @Value("${hmdp.seckill.order.max-deliveries:5}")
+    private int maxDeliveries;
+
+    /**
+     * 写入指标 分别统计逐条写入和批量写入 用于对比吞吐量
+     */
+    private final LongAdder singleOrders = new LongAdder();
+    private final LongAdder singleNanos = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder batchOrders = new LongAdder();
+    private final LongAdder batchNanos = new LongAdder();
+    private final LongAdder batchFallbacks = new LongAdder();
+    private final LongAdder failedOrders = new LongAdder();
+    private final LongAdder deadLetters = new LongAdder();
+
+    /**
+     * 订单消费线程 每个订单stream一个
+     */
+    private ExecutorService seckillOrderExecutor;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    private void init() {
+        List<String> streams = seckillStockManager.orderStreams();
+        AtomicInteger index = new AtomicInteger();
+        seckillOrderExecutor = Executors.newFixedThreadPool(streams.size(),
+                r -> new Thread(r, "seckill-order-" + index.getAndIncrement()));
+        for (String stream : streams) {
+            createGroupIfAbsent(stream);
+            seckillOrderExecutor.submit(new VoucherOrderHandler(stream));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        seckillOrderExecutor.shutdownNow();
+    }
 
     /**
      * 实现秒杀优惠券功能
@@ -46,43 +165,85 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
-        //1 查询优惠券
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
-
-        //2 判断秒杀是否开始 没开始直接返回false
-        if (LocalDateTime.now().isBefore(voucher.getBeginTime())) {
-            return Result.fail("秒杀尚未开始");
+        //0 布隆过滤器判断优惠券不存在 直接返回 不查数据库
+        if (!bloomFilterManager.mightContain(BloomFilterManager.VOUCHER, voucherId)) {
+            return Result.fail("优惠券不存在");
         }
-
-        //3 判断秒杀是否结束
-        if (LocalDateTime.now().isAfter(voucher.getEndTime())) {
-            return Result.fail("秒杀已经结束");
+        //0.1 本地已经标记售罄或结束 直接返回 不访问redis
+        Integer finished = seckillSoldOutRegistry.finishedReason(voucherId);
+        if (finished != null) {
+            return Result.fail(SeckillStockManager.message(finished));
         }
-
-        //4 判断库存是否充足
-        Integer stock = voucher.getStock();
-        if (stock < 1) {
-            return Result.fail("晚了一步，优惠券被抢光了!");
+        //0.2 起止时间在内存中判断 秒杀券信息来自本地缓存和redis
+        SeckillVoucher voucher = seckillVoucherService.queryById(voucherId);
+        if (voucher == null) {
+            return Result.fail(SeckillStockManager.message(SeckillStockManager.NOT_EXIST));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(voucher.getBeginTime())) {
+            return Result.fail(SeckillStockManager.message(SeckillStockManager.NOT_STARTED));
+        }
+        if (now.isAfter(voucher.getEndTime())) {
+            seckillSoldOutRegistry.onResult(voucherId, SeckillStockManager.ENDED);
+            return Result.fail(SeckillStockManager.message(SeckillStockManager.ENDED));
         }
         Long userId = UserHolder.getUser().getId();
-        //每次用户都是重新获得的，所以需要toString。而toString每次又是new的，还是不一致，所以使用intern常量池中的string
-        //又因为事务提交要在方法结束后才进行，防止锁释放后事务还没提交而其他线程又进入产生问题，所以要在方法外加锁
-        synchronized (userId.toString().intern()) {
-            //获取事务有关的代理对象
-            IVoucherOrderService service = (IVoucherOrderService) AopContext.currentProxy();
-
-            return service.createVoucherOrder(voucherId);
+        long orderId = idGenerator.nextId("order");
+        //1~4 执行lua脚本 在redis中原子判断秒杀时间 库存和一人一单 通过后订单直接进入消息队列
+        int result = seckillStockManager.tryAcquire(voucherId, userId, orderId);
+        if (result != SeckillStockManager.SUCCESS) {
+            //库存不足或已经结束时标记售罄 并通知其他节点
+            seckillSoldOutRegistry.onResult(voucherId, result);
+            return Result.fail(SeckillStockManager.message(result));
         }
+        //5 订单由后台消费者写入数据库 直接返回订单id
+        return Result.ok(orderId);
     }
 
-    @Transactional
-    public Result createVoucherOrder(Long voucherId) {
-        //5一人一单 处理 查询order表中是否存在该id
+    /**
+     * 查询秒杀订单的处理结果 订单由后台异步写入 尚未写入时返回空数据 用户需要稍后再查
+     */
+    @Override
+    public Result queryOrder(Long orderId) {
         Long userId = UserHolder.getUser().getId();
+        //1 消费者放弃的订单 返回失败原因
+        String failed = stringRedisTemplate.opsForValue().get(SECKILL_ORDER_FAILED_KEY + orderId);
+        if (failed != null) {
+            String[] parts = failed.split(":", 2);
+            if (userId.toString().equals(parts[0])) {
+                return Result.fail(SeckillStockManager.message(Integer.parseInt(parts[1])));
+            }
+        }
+        //2 已经写入数据库的订单 只能查询自己的订单
+        VoucherOrder order = getById(orderId);
+        if (order != null && userId.equals(order.getUserId())) {
+            return Result.ok(order);
+        }
+        return Result.ok();
+    }
 
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        if (count > 0) return Result.fail("同一账户只能购买一张");
-
+    /**
+     * 订单写入数据库 在消费线程中执行
+     * 同一用户的订单由分布式锁串行处理 锁在事务之外 事务提交后才释放 多个节点同时消费也不会重复下单
+     *
+     * @return SUCCESS表示已经写入 其他值为放弃该订单的原因 由调用方在redis中补偿
+     */
+    @Override
+    @Transactional
+    @DistributedLock(key = "'lock:order:' + #voucherOrder.userId", waitTime = 5)
+    public int createVoucherOrder(VoucherOrder voucherOrder) {
+        //5一人一单 处理 查询order表中该用户的订单 消息重新投递时也会在这里被过滤
+        Long userId = voucherOrder.getUserId();
+        Long voucherId = voucherOrder.getVoucherId();
+        List<VoucherOrder> bought = query().select("id").eq("user_id", userId).eq("voucher_id", voucherId).list();
+        if (bought.stream().anyMatch(o -> o.getId().equals(voucherOrder.getId()))) {
+            //重新投递的消息 订单已经写入
+            return SeckillStockManager.SUCCESS;
+        }
+        if (!bought.isEmpty()) {
+            log.warn("用户{}重复购买秒杀券{} 订单{}已放弃", userId, voucherId, voucherOrder.getId());
+            return SeckillStockManager.DUPLICATE;
+        }
 
         //6 库存扣减
         boolean success = seckillVoucherService.update()
@@ -90,20 +251,321 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .eq("voucher_id", voucherId)
                 .gt("stock", 0)
                 .update();
-        if (!success) return Result.fail("抢券失败,库存不足");
-
-        //7 创建订单
-        VoucherOrder order = new VoucherOrder();
-        //7.1订单id
-        long orderId = redisIdWorker.nextId("order");
-        order.setId(orderId);
-        //7.2用户id
-        order.setUserId(userId);
-        //7.2秒杀券id
-        order.setVoucherId(voucherId);
-        //8 写入数据库
-        save(order);
-        //9 返回订单id
-        return Result.ok(orderId);
+        if (!success) {
+            log.error("秒杀券{}数据库库存不足 订单{}已放弃", voucherId, voucherOrder.getId());
+            return SeckillStockManager.OUT_OF_STOCK;
+        }
+
+        //7 写入数据库
+        save(voucherOrder);
+        return SeckillStockManager.SUCCESS;
+    }
+
+    /**
+     * 批量写入订单 一个事务内按券汇总扣减库存 再用一条insert写入所有订单
+     * 一人一单已经由redis保证 这里只过滤重新投递的消息 任意一步失败整批回滚 由调用方逐条重试
+     *
+     * @return 放弃的订单id和原因 由调用方在redis中补偿
+     */
+    @Override
+    @Transactional
+    public Map<Long, Integer> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //1 过滤数据库中已经存在的订单 以及同一批中的重复订单
+        Set<Long> userIds = voucherOrders.stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = voucherOrders.stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        List<VoucherOrder> existing = query().select("id", "user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds).list();
+        Set<Long> written = existing.stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        Set<String> bought = existing.stream().map(o -> o.getUserId() + ":" + o.getVoucherId())
+                .collect(Collectors.toCollection(HashSet::new));
+        List<VoucherOrder> orders = new ArrayList<>(voucherOrders.size());
+        Map<Long, Integer> dropped = new HashMap<>();
+        for (VoucherOrder order : voucherOrders) {
+            if (written.contains(order.getId())) {
+                //重新投递的消息 订单已经写入
+                continue;
+            }
+            if (bought.add(order.getUserId() + ":" + order.getVoucherId())) {
+                orders.add(order);
+            } else {
+                log.warn("用户{}重复购买秒杀券{} 订单{}已放弃", order.getUserId(), order.getVoucherId(), order.getId());
+                dropped.put(order.getId(), SeckillStockManager.DUPLICATE);
+            }
+        }
+        if (orders.isEmpty()) {
+            return dropped;
+        }
+
+        //2 每张券只执行一次 stock = stock - n 库存不足时整批回滚
+        Map<Long, Long> counts = orders.stream().collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        counts.forEach((voucherId, n) -> {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + n)
+                    .eq("voucher_id", voucherId)
+                    .ge("stock", n)
+                    .update();
+            if (!success) {
+                throw new IllegalStateException("秒杀券" + voucherId + "数据库库存不足" + n);
+            }
+        });
+
+        //3 一条insert写入
+        getBaseMapper().insertBatch(orders);
+        return dropped;
+    }
+
+    /**
+     * @return 逐条写入与批量写入的订单数 耗时和吞吐量
+     */
+    @Override
+    public Map<String, Object> orderWriteStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("batchSize", batchSize);
+        stats.put("linger", linger);
+        stats.put("single", throughput(singleOrders.sum(), singleNanos.sum()));
+        Map<String, Object> batch = throughput(batchOrders.sum(), batchNanos.sum());
+        long batches = batchCount.sum();
+        batch.put("batches", batches);
+        batch.put("avgBatchSize", batches == 0 ? 0 : (double) batchOrders.sum() / batches);
+        batch.put("fallbacks", batchFallbacks.sum());
+        stats.put("batch", batch);
+        stats.put("failed", failedOrders.sum());
+        stats.put("deadLetters", deadLetters.sum());
+        return stats;
+    }
+
+    private static Map<String, Object> throughput(long orders, long nanos) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("orders", orders);
+        stats.put("millis", TimeUnit.NANOSECONDS.toMillis(nanos));
+        stats.put("ordersPerSecond", nanos == 0 ? 0 : orders * 1_000_000_000D / nanos);
+        return stats;
+    }
+
+    /**
+     * 消费组不存在时创建 stream不存在时一并创建
+     */
+    private void createGroupIfAbsent(String stream) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    stream.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            //BUSYGROUP 消费组已经存在
+            log.debug("消费组{}已存在", SECKILL_ORDER_GROUP);
+        }
+    }
+
+    /**
+     * 从消息队列读取订单写入数据库 写入成功后确认 启动时和出现异常后先处理未确认的消息
+     */
+    private class VoucherOrderHandler implements Runnable {
+
+        private final String stream;
+
+        /**
+         * 逐条写入失败的次数 只在消费线程中访问 重启后重新计数
+         */
+        private final Map<RecordId, Integer> attempts = new HashMap<>();
+
+        private VoucherOrderHandler(String stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void run() {
+            //先处理上次崩溃前未确认的消息
+            handlePendingList();
+            while (running) {
+                try {
+                    //1 读取新消息 XREADGROUP GROUP g1 c1 COUNT n BLOCK 2000 STREAMS stream >
+                    List<MapRecord<String, Object, Object>> list = readBatch();
+                    //2 没有消息 继续下一次读取
+                    if (list.isEmpty()) {
+                        continue;
+                    }
+                    //3 写入数据库后确认
+                    handle(list);
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("处理订单异常", e);
+                    handlePendingList();
+                }
+            }
+        }
+
+        /**
+         * 读取一批新消息 读到第一条后在linger时间内继续读取 直到凑满batchSize
+         */
+        private List<MapRecord<String, Object, Object>> readBatch() {
+            List<MapRecord<String, Object, Object>> records = new ArrayList<>(read(batchSize, Duration.ofSeconds(2)));
+            if (records.isEmpty() || batchSize <= 1 || linger <= 0) {
+                return records;
+            }
+            long deadline = System.currentTimeMillis() + linger;
+            while (records.size() < batchSize) {
+                long remain = deadline - System.currentTimeMillis();
+                //BLOCK 0表示一直阻塞 剩余时间不足1毫秒时直接结束
+                if (remain < 1) {
+                    break;
+                }
+                List<MapRecord<String, Object, Object>> more = read(batchSize - records.size(), Duration.ofMillis(remain));
+                if (more.isEmpty()) {
+                    break;
+                }
+                records.addAll(more);
+            }
+            return records;
+        }
+
+        private List<MapRecord<String, Object, Object>> read(int count, Duration block) {
+            return read(StreamReadOptions.empty().count(count).block(block), ReadOffset.lastConsumed());
+        }
+
+        /**
+         * XREADGROUP GROUP g1 consumerName ... STREAMS stream offset
+         * read的StreamOffset参数是泛型可变参数 调用时会创建泛型数组 只读取一个stream 不存在堆污染
+         */
+        @SuppressWarnings("unchecked")
+        private List<MapRecord<String, Object, Object>> read(StreamReadOptions options, ReadOffset offset) {
+            List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                    Consumer.from(SECKILL_ORDER_GROUP, consumerName), options, StreamOffset.create(stream, offset));
+            return list == null ? new ArrayList<>() : list;
+        }
+
+        /**
+         * 处理已读取但未确认的消息 XREADGROUP ... STREAMS stream.orders 0
+         */
+        private void handlePendingList() {
+            while (running) {
+                try {
+                    List<MapRecord<String, Object, Object>> list = read(
+                            StreamReadOptions.empty().count(Math.max(batchSize, 1)), ReadOffset.from("0"));
+                    //没有未确认的消息 结束
+                    if (list.isEmpty()) {
+                        return;
+                    }
+                    handle(list);
+                } catch (Exception e) {
+                    log.error("处理pending-list订单异常", e);
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 多条订单先尝试批量写入 失败时逐条写入 逐条写入仍失败的消息留在pending-list中
+         * 同一条消息失败maxDeliveries次后转入死信stream 补偿redis后确认
+         */
+        private void handle(List<MapRecord<String, Object, Object>> records) {
+            if (records.size() > 1) {
+                List<VoucherOrder> orders = records.stream().map(this::toOrder).collect(Collectors.toList());
+                long begin = System.nanoTime();
+                try {
+                    Map<Long, Integer> dropped = self.createVoucherOrders(orders);
+                    batchNanos.add(System.nanoTime() - begin);
+                    batchCount.increment();
+                    batchOrders.add(orders.size());
+                    for (MapRecord<String, Object, Object> record : records) {
+                        Integer reason = dropped.get(toOrder(record).getId());
+                        if (reason != null) {
+                            compensate(record, reason);
+                        }
+                    }
+                    //整批事务提交后一次确认 XACK stream.orders g1 id1 id2 ...
+                    stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP,
+                            records.stream().map(MapRecord::getId).toArray(RecordId[]::new));
+                    return;
+                } catch (Exception e) {
+                    batchFallbacks.increment();
+                    log.warn("批量写入{}条订单失败 改为逐条写入", orders.size(), e);
+                }
+            }
+            boolean retry = false;
+            for (MapRecord<String, Object, Object> record : records) {
+                try {
+                    handle(record);
+                    attempts.remove(record.getId());
+                } catch (Exception e) {
+                    int count = attempts.merge(record.getId(), 1, Integer::sum);
+                    if (count < maxDeliveries) {
+                        log.warn("订单{}第{}次写入失败", record.getId(), count, e);
+                        retry = true;
+                        continue;
+                    }
+                    log.error("订单{}写入失败{}次 转入死信stream", record.getId(), count, e);
+                    deadLetter(record);
+                    attempts.remove(record.getId());
+                }
+            }
+            if (retry) {
+                throw new IllegalStateException("部分订单写入失败 留在pending-list中稍后重试");
+            }
+        }
+
+        private void handle(MapRecord<String, Object, Object> record) {
+            VoucherOrder voucherOrder = toOrder(record);
+            long begin = System.nanoTime();
+            //通过代理调用 按用户加分布式锁并开启事务 获取锁失败时抛出异常 消息留在pending-list中稍后重试
+            int result = self.createVoucherOrder(voucherOrder);
+            singleNanos.add(System.nanoTime() - begin);
+            singleOrders.increment();
+            if (result != SeckillStockManager.SUCCESS) {
+                compensate(record, result);
+            }
+            //事务提交后再确认 SACK stream.orders g1 id
+            stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP, record.getId());
+        }
+
+        /**
+         * 转入死信stream 补偿redis后确认 XADD stream.orders.dead * ... / XACK
+         */
+        private void deadLetter(MapRecord<String, Object, Object> record) {
+            Map<Object, Object> value = new HashMap<>(record.getValue());
+            value.put("stream", stream);
+            value.put("recordId", record.getId().getValue());
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_STREAM, value);
+            deadLetters.increment();
+            compensate(record, SeckillStockManager.FAILED);
+            stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP, record.getId());
+        }
+
+        /**
+         * 放弃订单时记录失败原因并补偿redis 失败记录已经存在时说明补偿过 消息确认前崩溃重新投递也只补偿一次
+         * 重复下单只归还库存 数据库库存不足只移除用户 其他原因两者都恢复 归还库存后清除售罄标记
+         */
+        private void compensate(MapRecord<String, Object, Object> record, int reason) {
+            VoucherOrder order = toOrder(record);
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(SECKILL_ORDER_FAILED_KEY + order.getId(),
+                    order.getUserId() + ":" + reason, SECKILL_ORDER_FAILED_TTL, TimeUnit.HOURS);
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            failedOrders.increment();
+            Object segment = record.getValue().get("segment");
+            Integer used = segment == null ? null : Integer.valueOf(segment.toString());
+            if (reason == SeckillStockManager.OUT_OF_STOCK) {
+                seckillStockManager.releaseBuyer(order.getVoucherId(), order.getUserId());
+                return;
+            }
+            if (reason == SeckillStockManager.DUPLICATE) {
+                seckillStockManager.releaseStock(order.getVoucherId(), used);
+            } else {
+                seckillStockManager.rollback(order.getVoucherId(), order.getUserId(), used);
+            }
+            //库存已经归还 清除所有节点的售罄标记 否则归还的库存再也卖不出去
+            seckillSoldOutRegistry.clear(order.getVoucherId());
+        }
+
+        private VoucherOrder toOrder(MapRecord<String, Object, Object> record) {
+            Map<Object, Object> value = record.getValue();
+            return BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
+        }
     }
 }
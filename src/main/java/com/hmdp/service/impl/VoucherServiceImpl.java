@@ -7,11 +7,19 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.BloomFilterManager;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SeckillStockManager;
+import com.hmdp.utils.TransactionHooks;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SECKILL_VOUCHER_TTL;
 
 /**
  * <p>
@@ -27,6 +35,27 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private BloomFilterManager bloomFilterManager;
+
+    @Resource
+    private SeckillStockManager seckillStockManager;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    /**
+     * 新增优惠券后写入布隆过滤器 普通券和秒杀券都经过这里 存在事务时提交后再写入
+     */
+    @Override
+    public boolean save(Voucher voucher) {
+        boolean success = super.save(voucher);
+        if (success) {
+            TransactionHooks.afterCommit(() -> bloomFilterManager.add(BloomFilterManager.VOUCHER, voucher.getId()));
+        }
+        return success;
+    }
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -46,6 +75,13 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setStock(voucher.getStock());
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
+        seckillVoucher.setSegments(voucher.getSegments());
         seckillVoucherService.save(seckillVoucher);
+        TransactionHooks.afterCommit(() -> {
+            // 库存和起止时间写入redis 秒杀资格在redis中判断 指定分段数时库存拆分为多个计数器
+            seckillStockManager.save(seckillVoucher);
+            // 秒杀券信息写入缓存 秒杀时直接在内存中判断起止时间
+            cacheClient.setWithLogicalExpire(CACHE_SECKILL_VOUCHER_KEY + voucher.getId(), seckillVoucher, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES);
+        });
     }
 }
@@ -0,0 +1,208 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import com.hmdp.mapper.VoucherMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author wzh
+ * @date 2023年12月12日 20:15
+ * Description: 布隆过滤器管理 防止随机id造成缓存穿透
+ * 启动时从数据库加载店铺 用户 优惠券的id 新增数据时写入redis并广播给其他节点 查询时只判断本地镜像
+ */
+@Slf4j
+@Component
+@Order(1)
+public class BloomFilterManager implements ApplicationRunner, MessageListener {
+
+    public static final String SHOP = "shop";
+    public static final String USER = "user";
+    public static final String VOUCHER = "voucher";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ShopMapper shopMapper;
+
+    private final UserMapper userMapper;
+
+    private final VoucherMapper voucherMapper;
+
+    private final boolean enabled;
+
+    /**
+     * 初始化时每次从数据库读取的id数量
+     */
+    private final int pageSize;
+
+    private final Map<String, RedisBloomFilter> filters = new HashMap<>();
+
+    /**
+     * 缓存key前缀与过滤器的对应关系
+     */
+    private final Map<String, RedisBloomFilter> prefixFilters = new HashMap<>();
+
+    /**
+     * 初始化完成前所有id都视为可能存在 不做拦截
+     */
+    private volatile boolean ready;
+
+    public BloomFilterManager(StringRedisTemplate stringRedisTemplate,
+                              ShopMapper shopMapper, UserMapper userMapper, VoucherMapper voucherMapper,
+                              @Value("${hmdp.bloom.enabled:true}") boolean enabled,
+                              @Value("${hmdp.bloom.bits:16777216}") long bits,
+                              @Value("${hmdp.bloom.hashes:5}") int hashes,
+                              @Value("${hmdp.bloom.page-size:1000}") int pageSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.userMapper = userMapper;
+        this.voucherMapper = voucherMapper;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+        for (String name : new String[]{SHOP, USER, VOUCHER}) {
+            filters.put(name, new RedisBloomFilter(name, BLOOM_KEY + name, bits, hashes));
+        }
+        prefixFilters.put(CACHE_SHOP_KEY, filters.get(SHOP));
+        prefixFilters.put(CACHE_USER_KEY, filters.get(USER));
+    }
+
+    /**
+     * 判断id是否可能存在 纯内存操作
+     *
+     * @param name 过滤器名称 SHOP USER VOUCHER
+     */
+    public boolean mightContain(String name, Object id) {
+        if (!enabled || !ready || id == null) {
+            return true;
+        }
+        return filters.get(name).mightContain(id);
+    }
+
+    /**
+     * 按缓存key前缀判断id是否可能存在 没有对应过滤器的前缀一律返回true
+     */
+    public boolean mightContainKey(String keyPrefix, Object id) {
+        RedisBloomFilter filter = prefixFilters.get(keyPrefix);
+        return filter == null || mightContain(filter.getName(), id);
+    }
+
+    /**
+     * 新增数据后调用 写入本地镜像和redis 并通知其他节点
+     */
+    public void add(String name, Object id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        RedisBloomFilter filter = filters.get(name);
+        long[] offsets = filter.putLocal(id);
+        byte[] key = filter.getRedisKey().getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.setBit(key, offset, true);
+            }
+            return null;
+        });
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, name + ":" + id);
+    }
+
+    /**
+     * 启动时从数据库加载所有id 与redis中的bitmap合并
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        int shops = loadIds(shopMapper, filters.get(SHOP));
+        int users = loadIds(userMapper, filters.get(USER));
+        int vouchers = loadIds(voucherMapper, filters.get(VOUCHER));
+        filters.values().forEach(this::mergeWithRedis);
+        ready = true;
+        log.info("布隆过滤器初始化完成 店铺:{} 用户:{} 优惠券:{} 耗时:{}ms",
+                shops, users, vouchers, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 定时从redis同步 防止漏掉广播消息
+     */
+    @Scheduled(fixedDelayString = "${hmdp.bloom.sync-interval:60000}", initialDelayString = "${hmdp.bloom.sync-interval:60000}")
+    public void syncFromRedis() {
+        if (!enabled || !ready) {
+            return;
+        }
+        for (RedisBloomFilter filter : filters.values()) {
+            byte[] key = filter.getRedisKey().getBytes(StandardCharsets.UTF_8);
+            filter.mergeFrom(stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key)));
+        }
+    }
+
+    /**
+     * 收到其他节点新增数据的通知 消息格式 name:id
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(':');
+        RedisBloomFilter filter = index < 0 ? null : filters.get(body.substring(0, index));
+        if (filter != null) {
+            filter.putLocal(body.substring(index + 1));
+        }
+    }
+
+    /**
+     * 按id升序分页读取 不用offset 避免深分页
+     */
+    private <T> int loadIds(BaseMapper<T> mapper, RedisBloomFilter filter) {
+        int count = 0;
+        long lastId = 0;
+        while (true) {
+            List<Object> ids = mapper.selectObjs(new QueryWrapper<T>()
+                    .select("id").gt("id", lastId).orderByAsc("id").last("limit " + pageSize));
+            for (Object id : ids) {
+                filter.putLocal(id);
+            }
+            count += ids.size();
+            if (ids.size() < pageSize) {
+                return count;
+            }
+            lastId = ((Number) ids.get(ids.size() - 1)).longValue();
+        }
+    }
+
+    /**
+     * 本地镜像通过BITOP OR合并到redis 再把合并结果取回本地 其他节点写入的数据也会同步过来
+     */
+    private void mergeWithRedis(RedisBloomFilter filter) {
+        byte[] key = filter.getRedisKey().getBytes(StandardCharsets.UTF_8);
+        byte[] tmpKey = (filter.getRedisKey() + ":tmp:" + UUID.fastUUID().toString(true)).getBytes(StandardCharsets.UTF_8);
+        byte[] merged = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> {
+            connection.set(tmpKey, filter.toBytes());
+            connection.bitOp(RedisStringCommands.BitOperation.OR, key, key, tmpKey);
+            connection.del(tmpKey);
+            return connection.get(key);
+        });
+        filter.mergeFrom(merged);
+    }
+}
@@ -1,20 +1,33 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.lang.func.Func;
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ConvertingCursor;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -28,21 +41,90 @@ import static com.hmdp.utils.RedisConstants.*;
 public class CacheClient {
     private final StringRedisTemplate stringRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final LocalCache localCache;
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private final CacheCodec cacheCodec;
+
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+
+    private final HotKeyRefresher hotKeyRefresher;
+
+    private final BloomFilterManager bloomFilterManager;
+
+    private final TtlJitter ttlJitter;
+
+    private final RedisLockFactory redisLockFactory;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, LocalCache localCache,
+                       CacheInvalidationBus cacheInvalidationBus, CacheCodec cacheCodec,
+                       CacheRebuildExecutor cacheRebuildExecutor, HotKeyRefresher hotKeyRefresher,
+                       BloomFilterManager bloomFilterManager, TtlJitter ttlJitter,
+                       RedisLockFactory redisLockFactory) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = localCache;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.cacheCodec = cacheCodec;
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.hotKeyRefresher = hotKeyRefresher;
+        this.bloomFilterManager = bloomFilterManager;
+        this.ttlJitter = ttlJitter;
+        this.redisLockFactory = redisLockFactory;
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        stringRedisTemplate.opsForValue().set(key, cacheCodec.encode(value), ttlMillis(key, time, unit), TimeUnit.MILLISECONDS);
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        //把 time个unit转成秒 加入到当前时间
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        //把 time个unit打散后 加入到当前时间
+        LocalDateTime expireTime = expireTimeOf(key, time, unit);
         //转成JSON并写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        stringRedisTemplate.opsForValue().set(key, cacheCodec.encodeWithExpire(value, expireTime));
+        //本地缓存中的旧数据作废 下次读取时从redis重新加载
+        localCache.invalidate(key);
+    }
+
+    /**
+     * 批量写入逻辑过期数据 并行序列化后通过管道一次写入 用于缓存预热
+     *
+     * @param values key与数据的对应关系
+     */
+    public void setBatchWithLogicalExpire(Map<String, Object> values, Long time, TimeUnit unit) {
+        //每个key的过期时间单独打散 批量预热的key不会在同一时刻过期
+        Map<String, String> jsons = values.entrySet().parallelStream()
+                .collect(Collectors.toMap(Map.Entry::getKey,
+                        e -> cacheCodec.encodeWithExpire(e.getValue(), expireTimeOf(e.getKey(), time, unit))));
+        executePipelined(operations -> jsons.forEach((key, json) -> operations.opsForValue().set(key, json)));
+        jsons.keySet().forEach(localCache::invalidate);
+    }
+
+    /**
+     * 删除缓存 事务提交后执行 并通知所有节点清除本地缓存
+     *
+     * @param key 完整的key
+     */
+    public void evict(String key) {
+        cacheInvalidationBus.invalidate(key);
+    }
+
+    /**
+     * 数据修改后重写逻辑过期的缓存 事务提交后重新查询数据库写入redis 并通知所有节点清除本地缓存
+     * 逻辑过期的查询未命中时直接返回null 所以不能像普通缓存一样删除
+     */
+    public <R, ID> void refreshWithLogicalExpire(String keyPrefix, ID id, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        TransactionHooks.afterCommit(() -> {
+            R r = dbFallBack.apply(id);
+            if (r == null) {
+                //数据已经被删除
+                stringRedisTemplate.delete(key);
+            } else {
+                setWithLogicalExpire(key, r, time, unit);
+            }
+            cacheInvalidationBus.invalidateLocal(key);
+        });
     }
 
     /**
@@ -59,14 +141,17 @@ public class CacheClient {
      * @param <ID> ID,因为不确定id的类型,采用泛型
      */
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long timeNull, Long timeNotNull, TimeUnit unit) {
-        //解决缓存穿透
+        //解决缓存穿透 布隆过滤器判断不存在 直接返回 不访问redis和数据库
+        if (!bloomFilterManager.mightContainKey(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
         //1从redis中查询缓存是否存在
         String json = stringRedisTemplate.opsForValue().get(key);
         //2判断是否是有效值 其中不包括空值
         if (StrUtil.isNotBlank(json)) {
             //3存在 直接返回
-            return JSONUtil.toBean(json, type);
+            return cacheCodec.decode(json, type);
         }
         //存在且为空值
         if (json != null) {
@@ -77,7 +162,7 @@ public class CacheClient {
         R r = dbFallBack.apply(id);
         if (r == null) {
             //5未查询到 将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", timeNull, unit);
+            stringRedisTemplate.opsForValue().set(key, "", ttlMillis(key, timeNull, unit), TimeUnit.MILLISECONDS);
             return null;
         }
         //6存在 写入redis
@@ -86,9 +171,6 @@ public class CacheClient {
         return r;
     }
 
-    //启动线程的工具
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
     /**
      * 逻辑过期解决缓存击穿
      *
@@ -96,8 +178,17 @@ public class CacheClient {
      * @return
      */
     public  <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
-        //解决缓存穿透
+        //解决缓存穿透 布隆过滤器判断不存在 直接返回
+        if (!bloomFilterManager.mightContainKey(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
+        //0先查进程内一级缓存 命中且未逻辑过期直接返回 不走网络
+        R local = localCache.get(keyPrefix, key, type);
+        if (local != null) {
+            hotKeyRefresher.hit(key);
+            return local;
+        }
         //1从redis中查询缓存是否存在
         String json = stringRedisTemplate.opsForValue().get(key);
         //2如果未命中 直接返回 实际上逻辑过期处理方式不会未命中 因为数据持续存在直到人为删除
@@ -105,57 +196,373 @@ public class CacheClient {
             //3存在 直接返回
             return null;
         }
-        //4命中 先把JSON字符串反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        //4命中 把JSON字符串反序列化为对象 data字段直接转换为目标类型
+        RedisData redisData = cacheCodec.decodeWithExpire(json, type);
+        R r = type.cast(redisData.getData());
         //5 判断是否过期
         LocalDateTime expireTime = redisData.getExpireTime();
-        //5.1 未过期 直接返回
+        //记录读取次数 热点key由后台定时提前刷新
+        hotKeyRefresher.record(key, expireTime, () -> refreshAhead(key, id, type, dbFallBack, time, unit));
+        //5.1 未过期 放入一级缓存后直接返回
         if (LocalDateTime.now().isBefore(expireTime)) {
+            localCache.put(key, r, expireTime);
+            //即将过期 提前异步刷新 下一个读请求就不会看到过期数据
+            if (hotKeyRefresher.isNearExpire(expireTime)) {
+                rebuildAsync(key, id, json, dbFallBack, time, unit);
+            }
             return r;
         }
         //5.2 已经过期 尝试进行缓存重建
+        rebuildAsync(key, id, json, dbFallBack, time, unit);
+        //无论成功失败 都返回数据
+        return r;
+    }
 
-        //5.2.1 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        //若成功 开启线程重建缓存
-        if (tryLock(lockKey)) {
-            //二次检测是否过期
-            if (LocalDateTime.now().isBefore(expireTime)) {
-                return r;
+    /**
+     * 批量查询 解决缓存穿透 一次MGET查出所有key 未命中的id一次性查询数据库 再通过管道写回redis
+     *
+     * @param ids        要查询的id 返回结果按此顺序排列 不存在的数据不会出现在结果中
+     * @param dbFallBack 根据一批id查询数据库 一般是listByIds
+     * @param idGetter   从查询结果中取出id 用于和缓存key对应
+     * @return 查询结果
+     */
+    public <R, ID> List<R> queryBatchWithPassThrough(String keyPrefix, List<ID> ids, Class<R> type,
+                                                     Function<Collection<ID>, List<R>> dbFallBack, Function<R, ID> idGetter,
+                                                     Long timeNull, Long timeNotNull, TimeUnit unit) {
+        //布隆过滤器判断不存在的id直接去掉
+        ids = filterByBloom(keyPrefix, ids);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //1 一次MGET查询所有key
+        List<String> keys = ids.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        Map<ID, R> found = new HashMap<>(ids.size());
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            if (StrUtil.isNotBlank(json)) {
+                found.put(ids.get(i), cacheCodec.decode(json, type));
+            } else if (json == null) {
+                //空字符串表示数据库中也不存在 只有null才需要查库
+                missIds.add(ids.get(i));
             }
-            //若已过期 启动线程重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    //重建缓存
-                    R r1 = dbFallBack.apply(id);
-                    //写入redis
-                    setWithLogicalExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //释放锁
-                    unLock(lockKey);
+        }
+        //2 未命中的一次性查询数据库 并通过管道写回
+        if (!missIds.isEmpty()) {
+            Map<ID, R> loaded = loadByIds(missIds, dbFallBack, idGetter);
+            found.putAll(loaded);
+            executePipelined(operations -> {
+                for (ID id : missIds) {
+                    R r = loaded.get(id);
+                    String key = keyPrefix + id;
+                    String value = r == null ? "" : cacheCodec.encode(r);
+                    long ttl = ttlMillis(key, r == null ? timeNull : timeNotNull, unit);
+                    operations.opsForValue().set(key, value, ttl, TimeUnit.MILLISECONDS);
                 }
             });
         }
-        //无论成功失败 都返回数据
-        return r;
+        return orderByIds(ids, found);
     }
 
     /**
-     * 获取锁
+     * 批量查询 逻辑过期 先查一级缓存 剩余的一次MGET 已过期的异步重建
+     * 与单个查询不同 redis中不存在的数据会一次性查询数据库并通过管道写回 列表页不能出现空洞
      *
-     * @param key
-     * @return
+     * @see #queryBatchWithPassThrough
+     */
+    public <R, ID> List<R> queryBatchWithLogicalExpire(String keyPrefix, List<ID> ids, Class<R> type,
+                                                       Function<Collection<ID>, List<R>> dbFallBack, Function<R, ID> idGetter,
+                                                       Long time, TimeUnit unit) {
+        //布隆过滤器判断不存在的id直接去掉
+        ids = filterByBloom(keyPrefix, ids);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<ID, R> found = new HashMap<>(ids.size());
+        //1 先查一级缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : ids) {
+            R local = localCache.get(keyPrefix, keyPrefix + id, type);
+            if (local != null) {
+                found.put(id, local);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return orderByIds(ids, found);
+        }
+        //2 剩余的一次MGET
+        List<String> keys = remoteIds.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<ID> missIds = new ArrayList<>();
+        Function<ID, R> singleFallBack = id -> loadByIds(Collections.singletonList(id), dbFallBack, idGetter).get(id);
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            String json = jsons == null ? null : jsons.get(i);
+            if (StrUtil.isBlank(json)) {
+                missIds.add(id);
+                continue;
+            }
+            RedisData redisData = cacheCodec.decodeWithExpire(json, type);
+            R r = type.cast(redisData.getData());
+            found.put(id, r);
+            LocalDateTime expireTime = redisData.getExpireTime();
+            if (LocalDateTime.now().isBefore(expireTime)) {
+                localCache.put(keyPrefix + id, r, expireTime);
+                //即将过期 提前异步刷新
+                if (hotKeyRefresher.isNearExpire(expireTime)) {
+                    rebuildAsync(keyPrefix + id, id, json, singleFallBack, time, unit);
+                }
+            } else {
+                //已过期 返回旧数据 异步重建
+                rebuildAsync(keyPrefix + id, id, json, singleFallBack, time, unit);
+            }
+        }
+        //3 redis中不存在的一次性查询数据库 通过管道写回
+        if (!missIds.isEmpty()) {
+            Map<ID, R> loaded = loadByIds(missIds, dbFallBack, idGetter);
+            found.putAll(loaded);
+            executePipelined(operations -> loaded.forEach((id, r) ->
+                    operations.opsForValue().set(keyPrefix + id,
+                            cacheCodec.encodeWithExpire(r, expireTimeOf(keyPrefix + id, time, unit)))));
+        }
+        return orderByIds(ids, found);
+    }
+
+    /**
+     * 逻辑过期后重建缓存
+     * 同一个key在本JVM内同时只会有一个重建任务(single-flight) 由共享的重建线程池去重 其余线程直接返回旧数据 不再访问redis
+     * 重建线程再通过redis互斥锁保证整个集群只有一个节点查询数据库
+     *
+     * @param staleJson 读到的过期数据 获取锁后与redis中的值比较 不同说明其他节点已经重建过
+     */
+    private <R, ID> void rebuildAsync(String key, ID id, String staleJson, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        //本JVM内已有线程在重建这个key或队列已满时 提交失败 直接返回旧数据
+        cacheRebuildExecutor.submit(key, () -> rebuild(key, id, staleJson, dbFallBack, time, unit));
+    }
+
+    /**
+     * 主动刷新热点key 每次执行时重新读取redis中的值 其他节点已经刷新过时不再查询数据库
+     *
+     * @return 刷新后的逻辑过期时间 key已经不存在时返回null
+     */
+    private <R, ID> LocalDateTime refreshAhead(String key, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isBlank(json)) {
+            return null;
+        }
+        LocalDateTime expireTime = cacheCodec.decodeWithExpire(json, type).getExpireTime();
+        if (!hotKeyRefresher.isDue(expireTime)) {
+            return expireTime;
+        }
+        rebuild(key, id, json, dbFallBack, time, unit);
+        //没有拿到锁时值可能还没变 下一轮扫描会再次检查
+        String refreshed = stringRedisTemplate.opsForValue().get(key);
+        return StrUtil.isBlank(refreshed) ? null : cacheCodec.decodeWithExpire(refreshed, type).getExpireTime();
+    }
+
+    /**
+     * 重建缓存 在重建线程池中执行
+     */
+    private <R, ID> void rebuild(String key, ID id, String staleJson, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        //获取互斥锁 锁的key由缓存key推导 不同类型的数据互不影响 重建较慢时由看门狗续期
+        ILock lock = redisLockFactory.getLock(lockKeyOf(key));
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            //二次检测 redis中的值已经变化 说明其他节点已经重建
+            if (!staleJson.equals(stringRedisTemplate.opsForValue().get(key))) {
+                return;
+            }
+            //重建缓存
+            R r1 = dbFallBack.apply(id);
+            //写入redis
+            setWithLogicalExpire(key, r1, time, unit);
+        } finally {
+            //释放锁
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 由缓存key推导互斥锁的key 例如 cache:shop:1 -> lock:shop:1
      */
-    private boolean tryLock(String key) {
-        Boolean aBoolean = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(aBoolean);
+    static String lockKeyOf(String key) {
+        if (key.startsWith(CACHE_KEY_PREFIX)) {
+            return LOCK_KEY_PREFIX + key.substring(CACHE_KEY_PREFIX.length());
+        }
+        return LOCK_KEY_PREFIX + key;
+    }
+
+    private <ID> List<ID> filterByBloom(String keyPrefix, List<ID> ids) {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        return ids.stream().filter(id -> bloomFilterManager.mightContainKey(keyPrefix, id)).collect(Collectors.toList());
+    }
+
+    private <R, ID> Map<ID, R> loadByIds(List<ID> ids, Function<Collection<ID>, List<R>> dbFallBack, Function<R, ID> idGetter) {
+        List<R> list = dbFallBack.apply(ids);
+        Map<ID, R> loaded = new HashMap<>(ids.size());
+        if (list != null) {
+            for (R r : list) {
+                loaded.put(idGetter.apply(r), r);
+            }
+        }
+        return loaded;
     }
 
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    private <R, ID> List<R> orderByIds(List<ID> ids, Map<ID, R> found) {
+        List<R> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 打散后的过期时间 毫秒
+     */
+    private long ttlMillis(String key, Long time, TimeUnit unit) {
+        return ttlJitter.apply(key, unit.toMillis(time));
+    }
+
+    /**
+     * 打散后的逻辑过期时间
+     */
+    private LocalDateTime expireTimeOf(String key, Long time, TimeUnit unit) {
+        return LocalDateTime.now().plus(ttlMillis(key, time, unit), ChronoUnit.MILLIS);
+    }
+
+    /**
+     * 统计某个前缀下key的剩余过期时间分布 用于确认过期时间是否足够分散
+     * 有TTL的key取PTTL 逻辑过期的key取数据中的过期时间
+     *
+     * @param keyPrefix     key前缀
+     * @param bucketSeconds 每个区间的秒数
+     * @param maxKeys       最多统计的key数量 避免扫描过多
+     * @return 区间起点(距现在的秒数)与key数量 另有expired:已过期 persistent:既没有TTL也不是逻辑过期数据
+     */
+    public Map<String, Long> expiryHistogram(String keyPrefix, long bucketSeconds, int maxKeys) {
+        Map<String, Long> histogram = new TreeMap<>(Comparator.comparingLong(CacheClient::bucketOrder));
+        List<String> batch = new ArrayList<>();
+        int scanned = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(1000).build();
+        try (Cursor<String> cursor = stringRedisTemplate.executeWithStickyConnection(connection ->
+                new ConvertingCursor<>(connection.scan(options), bytes -> new String(bytes, StandardCharsets.UTF_8)))) {
+            while (cursor.hasNext() && scanned < maxKeys) {
+                batch.add(cursor.next());
+                scanned++;
+                if (batch.size() == 500) {
+                    countExpiry(batch, bucketSeconds, histogram);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        countExpiry(batch, bucketSeconds, histogram);
+        return histogram;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void countExpiry(List<String> keys, long bucketSeconds, Map<String, Long> histogram) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<Object> ttls = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                for (String key : keys) {
+                    ((RedisOperations<String, String>) operations).getExpire(key, TimeUnit.MILLISECONDS);
+                }
+                return null;
+            }
+        });
+        //没有TTL的key再取值 判断是否是逻辑过期数据
+        List<String> persistentKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            long ttl = ((Number) ttls.get(i)).longValue();
+            if (ttl >= 0) {
+                addToBucket(histogram, ttl, bucketSeconds);
+            } else if (ttl == -1) {
+                persistentKeys.add(keys.get(i));
+            }
+        }
+        if (persistentKeys.isEmpty()) {
+            return;
+        }
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(persistentKeys);
+        for (int i = 0; jsons != null && i < jsons.size(); i++) {
+            LocalDateTime expireTime = null;
+            try {
+                expireTime = StrUtil.isBlank(jsons.get(i)) ? null : cacheCodec.decodeWithExpire(jsons.get(i), Map.class).getExpireTime();
+            } catch (RuntimeException ignored) {
+                //不是逻辑过期数据
+            }
+            if (expireTime == null) {
+                histogram.merge("persistent", 1L, Long::sum);
+            } else {
+                addToBucket(histogram, LocalDateTime.now().until(expireTime, ChronoUnit.MILLIS), bucketSeconds);
+            }
+        }
+    }
+
+    private static void addToBucket(Map<String, Long> histogram, long remainMillis, long bucketSeconds) {
+        if (remainMillis < 0) {
+            histogram.merge("expired", 1L, Long::sum);
+            return;
+        }
+        long size = Math.max(bucketSeconds, 1);
+        long bucket = remainMillis / 1000 / size * size;
+        histogram.merge(String.valueOf(bucket), 1L, Long::sum);
+    }
+
+    /**
+     * 直方图排序 expired在最前 persistent在最后 其余按区间起点
+     */
+    private static long bucketOrder(String bucket) {
+        if ("expired".equals(bucket)) {
+            return Long.MIN_VALUE;
+        }
+        if ("persistent".equals(bucket)) {
+            return Long.MAX_VALUE;
+        }
+        return Long.parseLong(bucket);
+    }
+
+    /**
+     * 通过管道批量执行写命令 只有一次网络往返
+     */
+    @SuppressWarnings("unchecked")
+    private void executePipelined(Consumer<RedisOperations<String, String>> action) {
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                action.accept((RedisOperations<String, String>) operations);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return 一级缓存按key前缀统计的命中情况
+     */
+    public Map<String, Object> localCacheStats() {
+        return localCache.stats();
+    }
+
+    /**
+     * @return 缓存重建线程池的指标
+     */
+    public Map<String, Object> rebuildStats() {
+        return cacheRebuildExecutor.stats();
     }
 
 }
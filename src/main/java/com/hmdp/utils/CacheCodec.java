@@ -0,0 +1,34 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author wzh
+ * @date 2023年12月05日 20:12
+ * Description: 缓存值的编解码 CacheClient通过它读写redis中的字符串
+ * 逻辑过期数据的格式固定为 {"data":{...},"expireTime":毫秒时间戳} 不同实现之间可以互相读取
+ */
+public interface CacheCodec {
+
+    /**
+     * 普通数据序列化
+     */
+    String encode(Object value);
+
+    /**
+     * 普通数据反序列化
+     */
+    <R> R decode(String json, Class<R> type);
+
+    /**
+     * 带逻辑过期时间的数据序列化
+     */
+    String encodeWithExpire(Object value, LocalDateTime expireTime);
+
+    /**
+     * 带逻辑过期时间的数据反序列化
+     *
+     * @return data字段已经转换为type类型的RedisData
+     */
+    RedisData decodeWithExpire(String json, Class<?> type);
+}
@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * @author wzh
+ * @date 2023年12月03日 10:20
+ * Description: 缓存失效广播 数据库事务提交后删除redis中的key 并通过pub/sub通知所有节点清除本地缓存
+ * 逻辑过期的key不能删除 由调用方在事务提交后重写redis 这里只广播清除本地缓存
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LocalCache localCache;
+
+    public CacheInvalidationBus(StringRedisTemplate stringRedisTemplate, LocalCache localCache) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = localCache;
+    }
+
+    /**
+     * 使key失效 存在事务时等事务提交后再执行 避免其他线程在提交前又把旧数据加载回缓存
+     *
+     * @param key 完整的key
+     */
+    public void invalidate(String key) {
+        TransactionHooks.afterCommit(() -> {
+            stringRedisTemplate.delete(key);
+            invalidateLocal(key);
+        });
+    }
+
+    /**
+     * 清除所有节点的本地缓存 不影响redis
+     *
+     * @param key 完整的key
+     */
+    public void invalidateLocal(String key) {
+        localCache.invalidate(key);
+        //通知其他节点 自己也会收到一次 重复清除没有影响
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 收到其他节点的失效通知 清除本地缓存
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        localCache.invalidate(key);
+        log.debug("本地缓存失效:{}", key);
+    }
+}
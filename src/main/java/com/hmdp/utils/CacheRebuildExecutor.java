@@ -0,0 +1,124 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author wzh
+ * @date 2023年12月09日 16:05
+ * Description: 全局共享的缓存重建线程池
+ * 队列有界 同一个key排队中只保留一个任务 队列满时直接拒绝 调用方继续返回旧数据
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 已提交但还没有执行完的key 用于去重
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalMillis = new LongAdder();
+    private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+
+    public CacheRebuildExecutor(@Value("${hmdp.cache.rebuild.core-size:4}") int coreSize,
+                                @Value("${hmdp.cache.rebuild.max-size:10}") int maxSize,
+                                @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(coreSize, maxSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key  缓存key 同一个key同时只会有一个任务
+     * @param task 重建逻辑
+     * @return 是否提交成功 重复或者队列已满时返回false
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pending.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> run(key, task));
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            //队列已满 放弃本次重建 调用方继续使用旧数据
+            pending.remove(key);
+            rejected.increment();
+            log.warn("缓存重建队列已满 放弃重建 key:{}", key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long begin = System.currentTimeMillis();
+        try {
+            task.run();
+            succeeded.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.error("缓存重建失败 key:{}", key, e);
+        } finally {
+            pending.remove(key);
+            long cost = System.currentTimeMillis() - begin;
+            totalMillis.add(cost);
+            maxMillis.accumulate(cost);
+        }
+    }
+
+    /**
+     * @return 队列深度 重建耗时 失败次数等指标
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        long finished = succeeded.sum() + failed.sum();
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueRemaining", executor.getQueue().remainingCapacity());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("pendingKeys", pending.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgMillis", finished == 0 ? 0 : totalMillis.sum() / finished);
+        stats.put("maxMillis", maxMillis.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
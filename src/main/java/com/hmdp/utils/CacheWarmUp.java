@@ -0,0 +1,166 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author wzh
+ * @date 2023年12月16日 11:20
+ * Description: 启动时缓存预热 分页读取店铺 店铺类型 秒杀券 管道批量写入redis
+ * ApplicationRunner执行时内嵌Tomcat已经在接收请求 预热期间的请求按缓存未命中处理 查询数据库后写回
+ * 所有ApplicationRunner执行完后Spring Boot才发布ReadinessState.ACCEPTING_TRAFFIC 按就绪状态分配流量时预热完成后才会收到请求
+ */
+@Slf4j
+@Component
+@Order(2)
+public class CacheWarmUp implements ApplicationRunner {
+
+    private final CacheClient cacheClient;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheCodec cacheCodec;
+
+    private final ShopMapper shopMapper;
+
+    private final ShopTypeMapper shopTypeMapper;
+
+    private final SeckillVoucherMapper seckillVoucherMapper;
+
+    private final VoucherOrderMapper voucherOrderMapper;
+
+    private final SeckillStockManager seckillStockManager;
+
+    private final boolean enabled;
+
+    private final int pageSize;
+
+    public CacheWarmUp(CacheClient cacheClient, StringRedisTemplate stringRedisTemplate, CacheCodec cacheCodec,
+                       ShopMapper shopMapper, ShopTypeMapper shopTypeMapper, SeckillVoucherMapper seckillVoucherMapper,
+                       VoucherOrderMapper voucherOrderMapper, SeckillStockManager seckillStockManager,
+                       @Value("${hmdp.cache.warm-up.enabled:true}") boolean enabled,
+                       @Value("${hmdp.cache.warm-up.page-size:500}") int pageSize) {
+        this.cacheClient = cacheClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheCodec = cacheCodec;
+        this.shopMapper = shopMapper;
+        this.shopTypeMapper = shopTypeMapper;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        this.voucherOrderMapper = voucherOrderMapper;
+        this.seckillStockManager = seckillStockManager;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        int shops = warmUpShops();
+        int types = warmUpShopTypes();
+        int vouchers = warmUpSeckillVouchers();
+        long cost = Math.max(System.currentTimeMillis() - begin, 1);
+        log.info("缓存预热完成 店铺:{} 店铺类型:{} 秒杀券:{} 耗时:{}ms 吞吐:{}条/秒",
+                shops, types, vouchers, cost, (shops + types + vouchers) * 1000L / cost);
+    }
+
+    /**
+     * 按id升序分页读取店铺 每页并行序列化后通过管道写入
+     */
+    private int warmUpShops() {
+        int count = 0;
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .gt("id", lastId).orderByAsc("id").last("limit " + pageSize));
+            if (shops.isEmpty()) {
+                return count;
+            }
+            Map<String, Object> values = shops.stream()
+                    .collect(Collectors.toMap(shop -> CACHE_SHOP_KEY + shop.getId(), Function.identity()));
+            cacheClient.setBatchWithLogicalExpire(values, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
+            count += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            log.debug("预热店铺 已完成{}条", count);
+            if (shops.size() < pageSize) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * 店铺类型数量很少 一次读取 按sort顺序整体替换redis中的列表
+     * 删除和写入放在同一个事务中执行 并发读取不会看到空列表或只写了一半的列表
+     */
+    private int warmUpShopTypes() {
+        List<ShopType> types = shopTypeMapper.selectList(new QueryWrapper<ShopType>().orderByAsc("sort"));
+        if (types.isEmpty()) {
+            return 0;
+        }
+        List<String> values = types.stream().map(cacheCodec::encode).collect(Collectors.toList());
+        stringRedisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                //MULTI DEL RPUSH EXEC
+                stringOperations.multi();
+                stringOperations.delete(CACHE_SHOP_TYPE_KEY);
+                stringOperations.opsForList().rightPushAll(CACHE_SHOP_TYPE_KEY, values);
+                return stringOperations.exec();
+            }
+        });
+        return types.size();
+    }
+
+    /**
+     * 只预热还没有结束的秒杀券 redis中没有库存时一并写入库存和已下单的用户
+     */
+    private int warmUpSeckillVouchers() {
+        List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                .gt("end_time", LocalDateTime.now()));
+        if (vouchers.isEmpty()) {
+            return 0;
+        }
+        Map<String, Object> values = vouchers.stream()
+                .collect(Collectors.toMap(voucher -> CACHE_SECKILL_VOUCHER_KEY + voucher.getVoucherId(), Function.identity()));
+        cacheClient.setBatchWithLogicalExpire(values, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES);
+        for (SeckillVoucher voucher : vouchers) {
+            if (seckillStockManager.exists(voucher.getVoucherId())) {
+                continue;
+            }
+            List<Long> buyers = voucherOrderMapper.selectObjs(new QueryWrapper<VoucherOrder>()
+                            .select("user_id").eq("voucher_id", voucher.getVoucherId()))
+                    .stream().map(id -> ((Number) id).longValue()).collect(Collectors.toList());
+            seckillStockManager.saveIfAbsent(voucher, buyers);
+        }
+        return vouchers.size();
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author wzh
+ * @date 2023年12月28日 21:02
+ * Description: 方法级分布式锁 在事务之外加锁 事务提交后才释放
+ * 例如 @DistributedLock(key = "'lock:order:' + #voucherOrder.userId")
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface DistributedLock {
+
+    /**
+     * 锁的key 支持SpEL 通过 #参数名 引用方法参数
+     */
+    String key();
+
+    /**
+     * 最长等待时间 默认不等待
+     */
+    long waitTime() default 0;
+
+    /**
+     * 锁的有效期 默认由看门狗续期到方法结束
+     */
+    long leaseTime() default -1;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
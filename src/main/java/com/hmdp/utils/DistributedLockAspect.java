@@ -0,0 +1,67 @@
+package com.hmdp.utils;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author wzh
+ * @date 2023年12月28日 21:10
+ * Description: 处理@DistributedLock 优先级最高 保证锁包住@Transactional 避免锁释放后事务还没提交
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DistributedLockAspect {
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 解析后的表达式 每个key只解析一次
+     */
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    private final RedisLockFactory redisLockFactory;
+
+    public DistributedLockAspect(RedisLockFactory redisLockFactory) {
+        this.redisLockFactory = redisLockFactory;
+    }
+
+    /**
+     * 注解不作为通知参数绑定 优先级高于ExposeInvocationInterceptor时参数绑定会失败 从方法上读取注解
+     */
+    @Around("@annotation(com.hmdp.utils.DistributedLock)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        DistributedLock distributedLock = AnnotatedElementUtils.findMergedAnnotation(signature.getMethod(), DistributedLock.class);
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(
+                joinPoint.getTarget(), signature.getMethod(), joinPoint.getArgs(), nameDiscoverer);
+        String key = expressions.computeIfAbsent(distributedLock.key(), parser::parseExpression)
+                .getValue(context, String.class);
+
+        ILock lock = redisLockFactory.getLock(key);
+        if (!lock.tryLock(distributedLock.waitTime(), distributedLock.leaseTime(), distributedLock.unit())) {
+            throw new IllegalStateException("获取锁失败 " + key);
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * @author wzh
+ * @date 2023年12月10日 14:30
+ * Description: 热点key主动刷新 记录逻辑过期数据的读取次数
+ * 定时挑出读取最多的前N个key 在它们逻辑过期之前提交重建 读请求不再看到过期数据
+ */
+@Slf4j
+@Component
+public class HotKeyRefresher {
+
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+
+    private final boolean enabled;
+
+    /**
+     * 逻辑过期前多少毫秒内被读取就提前刷新
+     */
+    private final long windowMillis;
+
+    private final int topN;
+
+    private final long sweepIntervalMillis;
+
+    /**
+     * 最多跟踪的key数量 防止随机key把内存撑满
+     */
+    private final int maxTracked;
+
+    private final Map<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+
+    public HotKeyRefresher(CacheRebuildExecutor cacheRebuildExecutor,
+                           @Value("${hmdp.cache.refresh-ahead.enabled:true}") boolean enabled,
+                           @Value("${hmdp.cache.refresh-ahead.window:2000}") long windowMillis,
+                           @Value("${hmdp.cache.refresh-ahead.top-n:100}") int topN,
+                           @Value("${hmdp.cache.refresh-ahead.sweep-interval:5000}") long sweepIntervalMillis,
+                           @Value("${hmdp.cache.refresh-ahead.max-tracked:10000}") int maxTracked) {
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+        this.topN = topN;
+        this.sweepIntervalMillis = sweepIntervalMillis;
+        this.maxTracked = maxTracked;
+    }
+
+    /**
+     * 是否处于提前刷新的窗口内 即将逻辑过期
+     */
+    public boolean isNearExpire(LocalDateTime expireTime) {
+        return enabled && LocalDateTime.now().plusNanos(windowMillis * 1_000_000).isAfter(expireTime);
+    }
+
+    /**
+     * 是否会在下一轮扫描之前逻辑过期 需要本轮刷新
+     */
+    public boolean isDue(LocalDateTime expireTime) {
+        return LocalDateTime.now().plusNanos((sweepIntervalMillis + windowMillis) * 1_000_000).isAfter(expireTime);
+    }
+
+    /**
+     * 记录一次从redis读取 同时保存刷新这个key的任务
+     *
+     * @param key        缓存key
+     * @param expireTime 读到的逻辑过期时间
+     * @param refresher  刷新逻辑 在重建线程池中执行 每次执行时重新读取redis 返回刷新后的逻辑过期时间 key不存在时返回null
+     */
+    public void record(String key, LocalDateTime expireTime, Supplier<LocalDateTime> refresher) {
+        if (!enabled) {
+            return;
+        }
+        HotKey hotKey = hotKeys.get(key);
+        if (hotKey == null) {
+            if (hotKeys.size() >= maxTracked) {
+                return;
+            }
+            hotKey = hotKeys.computeIfAbsent(key, k -> new HotKey());
+        }
+        hotKey.count.incrementAndGet();
+        hotKey.expireTime = expireTime;
+        hotKey.refresher = refresher;
+    }
+
+    /**
+     * 记录一次一级缓存命中 只累加已经跟踪的key
+     */
+    public void hit(String key) {
+        if (!enabled) {
+            return;
+        }
+        HotKey hotKey = hotKeys.get(key);
+        if (hotKey != null) {
+            hotKey.count.incrementAndGet();
+        }
+    }
+
+    /**
+     * 定时刷新读取次数最多的前N个key 只处理在下一轮扫描之前就会逻辑过期的
+     */
+    @Scheduled(fixedDelayString = "${hmdp.cache.refresh-ahead.sweep-interval:5000}")
+    public void sweep() {
+        if (!enabled || hotKeys.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, HotKey>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, HotKey> e) -> e.getValue().count.get()).reversed());
+        int refreshed = 0;
+        for (int i = 0; i < entries.size() && i < topN; i++) {
+            String key = entries.get(i).getKey();
+            HotKey hotKey = entries.get(i).getValue();
+            //刷新后记下新的过期时间 之后的读取可能都命中一级缓存 不会再经过record
+            if (hotKey.expireTime != null && isDue(hotKey.expireTime)
+                    && cacheRebuildExecutor.submit(key, () -> hotKey.expireTime = hotKey.refresher.get())) {
+                refreshed++;
+            }
+        }
+        //读取次数减半 长时间没人读的key逐渐移出
+        hotKeys.entrySet().removeIf(e -> e.getValue().count.updateAndGet(c -> c / 2) == 0);
+        if (refreshed > 0) {
+            log.debug("主动刷新热点key {}个", refreshed);
+        }
+    }
+
+    private static class HotKey {
+        private final AtomicLong count = new AtomicLong();
+        private volatile LocalDateTime expireTime;
+        private volatile Supplier<LocalDateTime> refresher;
+    }
+}
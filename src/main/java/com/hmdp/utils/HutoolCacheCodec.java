@@ -0,0 +1,43 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author wzh
+ * @date 2023年12月05日 20:20
+ * Description: 基于hutool JSONUtil的编解码 原有实现 逻辑过期数据会先解析成JSONObject再转换一次
+ */
+@Component
+@ConditionalOnProperty(name = "hmdp.cache.codec", havingValue = "hutool")
+public class HutoolCacheCodec implements CacheCodec {
+
+    @Override
+    public String encode(Object value) {
+        return JSONUtil.toJsonStr(value);
+    }
+
+    @Override
+    public <R> R decode(String json, Class<R> type) {
+        return JSONUtil.toBean(json, type);
+    }
+
+    @Override
+    public String encodeWithExpire(Object value, LocalDateTime expireTime) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        return JSONUtil.toJsonStr(redisData);
+    }
+
+    @Override
+    public RedisData decodeWithExpire(String json, Class<?> type) {
+        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+        redisData.setData(JSONUtil.toBean((JSONObject) redisData.getData(), type));
+        return redisData;
+    }
+}
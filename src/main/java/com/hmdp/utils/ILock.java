@@ -0,0 +1,35 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author wzh
+ * @date 2023年12月28日 20:12
+ * Description: 分布式锁 同一线程可以重入 只有持有者才能释放
+ */
+public interface ILock {
+
+    /**
+     * 尝试获取锁 不等待 持有期间由看门狗自动续期
+     *
+     * @return 是否获取成功
+     */
+    boolean tryLock();
+
+    /**
+     * 尝试获取锁
+     *
+     * @param waitTime  最长等待时间 小于等于0表示不等待
+     * @param leaseTime 锁的有效期 小于等于0表示由看门狗自动续期直到释放
+     * @param unit      时间单位
+     * @return 是否获取成功
+     */
+    boolean tryLock(long waitTime, long leaseTime, TimeUnit unit);
+
+    /**
+     * 释放锁 重入几次就需要释放几次
+     *
+     * @throws IllegalMonitorStateException 当前线程没有持有该锁
+     */
+    void unlock();
+}
@@ -0,0 +1,15 @@
+package com.hmdp.utils;
+
+/**
+ * @author wzh
+ * @date 2024年01月15日 20:10
+ * Description: 全局唯一id 默认由RedisIdWorker生成 hmdp.id.generator=snowflake时使用SnowflakeIdGenerator
+ */
+public interface IdGenerator {
+
+    /**
+     * @param keyPrefix 业务前缀 例如 order
+     * @return 全局唯一的id
+     */
+    long nextId(String keyPrefix);
+}
@@ -0,0 +1,131 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author wzh
+ * @date 2023年12月05日 20:31
+ * Description: 基于jackson流式解析的编解码 默认实现
+ * 逻辑过期数据只解析一遍 data字段直接绑定到目标类型 不生成中间的JSONObject
+ * LocalDateTime按毫秒时间戳读写 与hutool写入的格式一致 旧数据可以直接读取
+ */
+@Component
+@ConditionalOnProperty(name = "hmdp.cache.codec", havingValue = "jackson", matchIfMissing = true)
+public class JacksonCacheCodec implements CacheCodec {
+
+    private static final String FIELD_DATA = "data";
+    private static final String FIELD_EXPIRE_TIME = "expireTime";
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 每个类型预先绑定好的reader 避免每次查找反序列化器
+     */
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    public JacksonCacheCodec() {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(LocalDateTime.class, new EpochMilliSerializer());
+        module.addDeserializer(LocalDateTime.class, new EpochMilliDeserializer());
+        this.objectMapper = new ObjectMapper()
+                .registerModule(module)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public String encode(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public <R> R decode(String json, Class<R> type) {
+        try {
+            return reader(type).readValue(json);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String encodeWithExpire(Object value, LocalDateTime expireTime) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        return encode(redisData);
+    }
+
+    @Override
+    public RedisData decodeWithExpire(String json, Class<?> type) {
+        RedisData redisData = new RedisData();
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("逻辑过期数据格式错误:" + json);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (FIELD_EXPIRE_TIME.equals(field)) {
+                    redisData.setExpireTime(toLocalDateTime(parser.getLongValue()));
+                } else if (FIELD_DATA.equals(field)) {
+                    //直接把data字段绑定到目标类型
+                    redisData.setData(reader(type).readValue(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return redisData;
+    }
+
+    private ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault());
+    }
+
+    private static class EpochMilliSerializer extends JsonSerializer<LocalDateTime> {
+        @Override
+        public void serialize(LocalDateTime value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeNumber(value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+    }
+
+    private static class EpochMilliDeserializer extends JsonDeserializer<LocalDateTime> {
+        @Override
+        public LocalDateTime deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return toLocalDateTime(p.getLongValue());
+        }
+    }
+}
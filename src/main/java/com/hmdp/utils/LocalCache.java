@@ -0,0 +1,118 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author wzh
+ * @date 2023年12月02日 15:10
+ * Description: 进程内一级缓存(L1) 位于redis(L2)之前 热点key直接在JVM内命中 不走网络
+ * 容量和存活时间都有上限 按LRU淘汰 同时遵守RedisData中的逻辑过期时间
+ */
+@Component
+public class LocalCache {
+
+    private final boolean enabled;
+
+    /**
+     * 本地缓存最长存活时间 毫秒
+     */
+    private final long ttl;
+
+    private final LRUCache<String, RedisData> cache;
+
+    /**
+     * 按key前缀统计的命中与未命中次数
+     */
+    private final Map<String, LongAdder> hitCount = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> missCount = new ConcurrentHashMap<>();
+
+    public LocalCache(@Value("${hmdp.cache.local.enabled:true}") boolean enabled,
+                      @Value("${hmdp.cache.local.capacity:1000}") int capacity,
+                      @Value("${hmdp.cache.local.ttl:5000}") long ttl) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.cache = CacheUtil.newLRUCache(capacity, ttl);
+    }
+
+    /**
+     * 查询一级缓存 逻辑过期或类型不符都视为未命中 交给redis处理重建
+     *
+     * @param keyPrefix 统计用的key前缀
+     * @param key       完整的key
+     * @param type      返回值类型
+     * @return 命中返回数据 否则返回null
+     */
+    public <R> R get(String keyPrefix, String key, Class<R> type) {
+        if (!enabled) {
+            return null;
+        }
+        //不更新最后访问时间 存活时间从写入时算起 热点key也会按时过期 广播丢失时旧数据最多保留ttl
+        RedisData redisData = cache.get(key, false);
+        if (redisData == null || !type.isInstance(redisData.getData())) {
+            count(missCount, keyPrefix);
+            return null;
+        }
+        if (!LocalDateTime.now().isBefore(redisData.getExpireTime())) {
+            //已经逻辑过期 本地不再保留 让调用方去redis走重建流程
+            cache.remove(key);
+            count(missCount, keyPrefix);
+            return null;
+        }
+        count(hitCount, keyPrefix);
+        return type.cast(redisData.getData());
+    }
+
+    /**
+     * 写入一级缓存 存活时间取配置时间与剩余逻辑过期时间中较小者
+     *
+     * @param key        完整的key
+     * @param data       已经反序列化好的数据
+     * @param expireTime 逻辑过期时间
+     */
+    public void put(String key, Object data, LocalDateTime expireTime) {
+        if (!enabled || data == null) {
+            return;
+        }
+        long remain = LocalDateTime.now().until(expireTime, ChronoUnit.MILLIS);
+        if (remain <= 0) {
+            return;
+        }
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(expireTime);
+        cache.put(key, redisData, Math.min(ttl, remain));
+    }
+
+    public void invalidate(String key) {
+        cache.remove(key);
+    }
+
+    /**
+     * @return 每个key前缀的命中/未命中次数以及当前缓存条数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Map<String, Long>> prefixes = new HashMap<>();
+        hitCount.forEach((prefix, count) -> prefixes.computeIfAbsent(prefix, k -> new HashMap<>()).put("hit", count.sum()));
+        missCount.forEach((prefix, count) -> prefixes.computeIfAbsent(prefix, k -> new HashMap<>()).put("miss", count.sum()));
+        stats.put("enabled", enabled);
+        stats.put("size", cache.size());
+        stats.put("capacity", cache.capacity());
+        stats.put("prefixes", prefixes);
+        return stats;
+    }
+
+    private void count(Map<String, LongAdder> counter, String keyPrefix) {
+        counter.computeIfAbsent(keyPrefix, k -> new LongAdder()).increment();
+    }
+}
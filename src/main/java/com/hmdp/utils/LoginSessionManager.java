@@ -0,0 +1,265 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.lang.UUID;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * @author wzh
+ * @date 2024年01月20日 14:40
+ * Description: 登录会话 按token在本地短暂缓存redis中的用户信息 同一个token在缓存时间内只查询一次redis
+ * 剩余有效期低于阈值时才刷新 刷新请求先记下 定时用pipeline批量执行
+ * hmdp.login.mode=signed时使用SignedTokenService签发的无状态令牌 校验不访问redis
+ */
+@Slf4j
+@Component
+public class LoginSessionManager {
+
+    public static final String MODE_REDIS = "redis";
+    public static final String MODE_SIGNED = "signed";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 只在signed模式下存在
+     */
+    private final SignedTokenService signedTokenService;
+
+    /**
+     * 是否使用无状态令牌
+     */
+    private final boolean signed;
+
+    private final boolean cacheEnabled;
+
+    /**
+     * 剩余有效期低于该毫秒数时才刷新
+     */
+    private final long refreshThreshold;
+
+    private final long ttl = TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+
+    /**
+     * token对应的会话 不存在的token也会缓存 避免过期token反复查询redis
+     */
+    private final LRUCache<String, Session> sessions;
+
+    /**
+     * 等待刷新有效期的token
+     */
+    private final Set<String> pendingRefresh = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hit = new LongAdder();
+    private final LongAdder miss = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "login-ttl-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LoginSessionManager(StringRedisTemplate stringRedisTemplate, ObjectProvider<SignedTokenService> signedTokenService,
+                               @Value("${hmdp.login.mode:redis}") String mode,
+                               @Value("${hmdp.login.cache.enabled:true}") boolean cacheEnabled,
+                               @Value("${hmdp.login.cache.capacity:10000}") int capacity,
+                               @Value("${hmdp.login.cache.ttl:2000}") long cacheTtl,
+                               @Value("${hmdp.login.refresh.threshold:20}") long refreshThreshold,
+                               @Value("${hmdp.login.refresh.interval:300}") long refreshInterval) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.signed = MODE_SIGNED.equals(mode);
+        this.signedTokenService = signed ? signedTokenService.getObject() : null;
+        this.cacheEnabled = cacheEnabled;
+        this.refreshThreshold = TimeUnit.MINUTES.toMillis(refreshThreshold);
+        this.sessions = CacheUtil.newLRUCache(capacity, cacheTtl);
+        refresher.scheduleWithFixedDelay(this::flushRefresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登录成功后创建会话
+     *
+     * @return 返回给前端的token
+     */
+    public String createSession(UserDTO userDTO) {
+        if (signed) {
+            return signedTokenService.issue(userDTO);
+        }
+        //a 随即生成token 作为登录令牌
+        String token = UUID.randomUUID().toString(true);
+        //b 将user对象转为hashmap 因为stringRedisTemplate要求map的key value都要为string 类型 所以进行转换
+        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
+                CopyOptions.create().
+                        setIgnoreNullValue(true).
+                        setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+        //c 存储
+        String tokenKey = LOGIN_USER_KEY + token;
+        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
+        //d 设置有效期
+        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        return token;
+    }
+
+    /**
+     * 登出 删除redis中的会话或吊销无状态令牌 其他节点的本地缓存最多延迟hmdp.login.cache.ttl失效
+     */
+    public void removeSession(String token) {
+        if (signed) {
+            signedTokenService.revoke(token);
+            return;
+        }
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        sessions.remove(token);
+        pendingRefresh.remove(token);
+    }
+
+    /**
+     * 根据token查询登录用户 需要时登记刷新有效期
+     *
+     * @param token 请求头中的token
+     * @return 用户不存在或已过期返回null
+     */
+    public UserDTO getUser(String token) {
+        if (signed) {
+            //签名和有效期在本地校验 只有可能被吊销时才查询redis
+            return signedTokenService.verify(token);
+        }
+        String key = LOGIN_USER_KEY + token;
+        if (!cacheEnabled) {
+            //不使用缓存 每次请求查询并刷新
+            Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+            if (userMap.isEmpty()) {
+                return null;
+            }
+            stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
+            return BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        }
+        //不更新最后访问时间 缓存时间从加载时算起 保证最多过期这么久
+        Session session = sessions.get(token, false);
+        if (session == null) {
+            miss.increment();
+            session = load(key);
+            sessions.put(token, session);
+        } else {
+            hit.increment();
+        }
+        if (session.user == null) {
+            return null;
+        }
+        if (session.expireAt - System.currentTimeMillis() < refreshThreshold) {
+            pendingRefresh.add(token);
+        }
+        return session.user;
+    }
+
+    /**
+     * 一次往返同时查询用户信息和剩余有效期
+     */
+    private Session load(String key) {
+        long now = System.currentTimeMillis();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.hGetAll(key);
+            stringConnection.pTtl(key);
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> userMap = (Map<Object, Object>) results.get(0);
+        Long remain = (Long) results.get(1);
+        if (userMap == null || userMap.isEmpty() || remain == null || remain == -2) {
+            return new Session(null, 0);
+        }
+        //没有设置有效期的视为刚好到期 交给刷新补上
+        return new Session(BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false), remain < 0 ? now : now + remain);
+    }
+
+    /**
+     * 批量刷新登记过的token 一个周期内每个token最多刷新一次
+     */
+    private void flushRefresh() {
+        if (pendingRefresh.isEmpty()) {
+            return;
+        }
+        List<String> tokens = new ArrayList<>(pendingRefresh);
+        pendingRefresh.removeAll(tokens);
+        long now = System.currentTimeMillis();
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (String token : tokens) {
+                    stringConnection.pExpire(LOGIN_USER_KEY + token, ttl);
+                }
+                return null;
+            });
+            for (String token : tokens) {
+                Session session = sessions.get(token, false);
+                if (session != null) {
+                    session.expireAt = now + ttl;
+                }
+            }
+            refreshed.add(tokens.size());
+        } catch (Exception e) {
+            //redis暂时不可用 下次访问时会重新登记
+            log.warn("刷新{}个token的有效期失败", tokens.size(), e);
+        }
+    }
+
+    /**
+     * @return 会话缓存的命中/未命中次数以及刷新有效期的次数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", signed ? MODE_SIGNED : MODE_REDIS);
+        stats.put("cacheEnabled", cacheEnabled);
+        stats.put("size", sessions.size());
+        stats.put("hit", hit.sum());
+        stats.put("miss", miss.sum());
+        stats.put("refreshed", refreshed.sum());
+        stats.put("pendingRefresh", pendingRefresh.size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    private static final class Session {
+
+        private final UserDTO user;
+
+        /**
+         * 本地记录的过期时间 其他节点也可能刷新过 实际只会更晚
+         */
+        private volatile long expireAt;
+
+        private Session(UserDTO user, long expireAt) {
+            this.user = user;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author wzh
+ * @date 2023年12月12日 19:40
+ * Description: 布隆过滤器 以redis中的bitmap为准 在本地保留一份镜像
+ * 本地镜像按redis的位序存放(每个long按大端存8个字节 字节内高位在前) 与redis互相同步时可以直接按字节拷贝
+ * 查询只读本地镜像 不访问redis
+ */
+public class RedisBloomFilter {
+
+    private final String name;
+
+    private final String redisKey;
+
+    /**
+     * 位数组长度
+     */
+    private final long bits;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int hashes;
+
+    private final AtomicLongArray local;
+
+    public RedisBloomFilter(String name, String redisKey, long bits, int hashes) {
+        this.name = name;
+        this.redisKey = redisKey;
+        //按long对齐
+        this.bits = (bits + 63) / 64 * 64;
+        this.hashes = hashes;
+        this.local = new AtomicLongArray((int) (this.bits / 64));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRedisKey() {
+        return redisKey;
+    }
+
+    /**
+     * 判断id是否可能存在 返回false时一定不存在
+     */
+    public boolean mightContain(Object id) {
+        for (long offset : offsets(id)) {
+            if ((local.get((int) (offset >>> 6)) & mask(offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只写入本地镜像 redis由调用方通过SETBIT写入
+     *
+     * @return 该id对应的位偏移
+     */
+    public long[] putLocal(Object id) {
+        long[] offsets = offsets(id);
+        for (long offset : offsets) {
+            int index = (int) (offset >>> 6);
+            long mask = mask(offset);
+            long old;
+            do {
+                old = local.get(index);
+            } while ((old & mask) == 0 && !local.compareAndSet(index, old, old | mask));
+        }
+        return offsets;
+    }
+
+    /**
+     * 把redis中的bitmap合并到本地镜像
+     */
+    public void mergeFrom(byte[] redisBytes) {
+        if (redisBytes == null) {
+            return;
+        }
+        byte[] padded = new byte[local.length() * 8];
+        System.arraycopy(redisBytes, 0, padded, 0, Math.min(redisBytes.length, padded.length));
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+        for (int i = 0; i < local.length(); i++) {
+            long remote = buffer.getLong();
+            if (remote != 0) {
+                local.getAndAccumulate(i, remote, (a, b) -> a | b);
+            }
+        }
+    }
+
+    /**
+     * @return 本地镜像按redis位序转成的字节数组 用于合并到redis
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(local.length() * 8);
+        for (int i = 0; i < local.length(); i++) {
+            buffer.putLong(local.get(i));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 双重哈希计算k个位偏移 基于murmur128的高低64位
+     */
+    private long[] offsets(Object id) {
+        long[] hash = MurmurHash.hash128(id.toString());
+        long[] offsets = new long[hashes];
+        long combined = hash[0];
+        for (int i = 0; i < hashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % bits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    /**
+     * redis位序 offset在所属long中从高位往低位排列
+     */
+    private static long mask(long offset) {
+        return 1L << (63 - (offset & 63));
+    }
+}
@@ -5,17 +5,64 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 30L;
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    /**
+     * 已吊销令牌的布隆过滤器 只在本地按LOGIN_REVOKED_KEY重建 不与有序集合共用key
+     */
+    public static final String LOGIN_REVOKED_BLOOM_KEY = "bloom:login:revoked";
+    public static final String LOGIN_REVOKE_CHANNEL = "login:revoke";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
+    /**
+     * 店铺逻辑过期时间 秒
+     */
+    public static final Long CACHE_SHOP_LOGICAL_TTL = 10L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop:type:";
 
+    public static final Long CACHE_SECKILL_VOUCHER_TTL = 30L;
+    public static final String CACHE_SECKILL_VOUCHER_KEY = "cache:seckill:voucher:";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final String CACHE_KEY_PREFIX = "cache:";
+    public static final String LOCK_KEY_PREFIX = "lock:";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final String BLOOM_KEY = "bloom:";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    /**
+     * 分段库存 seckill:stock:{voucherId:i} 每个分段单独一个hash tag 集群下分散到不同的slot
+     * 同一分段的已购用户和令牌桶使用相同的hash tag 一次请求只访问一个slot
+     */
+    public static final String SECKILL_SEGMENT_KEY = "seckill:stock:{%d:%d}";
+    public static final String SECKILL_SEGMENT_ORDER_KEY = "seckill:order:{%d:%d}";
+    public static final String SECKILL_SEGMENT_ADMISSION_KEY = "seckill:admission:{%d:%d}";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_ADMISSION_KEY = "seckill:admission:";
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String ID_WORKER_TIME_KEY = "id:worker:time:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    /**
+     * 多次写入失败的订单转入死信stream 不再重试
+     */
+    public static final String SECKILL_ORDER_DEAD_STREAM = "stream.orders.dead";
+    /**
+     * 消费者放弃的订单 值为 用户id:失败原因 供用户按订单id查询结果
+     */
+    public static final String SECKILL_ORDER_FAILED_KEY = "seckill:failed:";
+    public static final Long SECKILL_ORDER_FAILED_TTL = 24L;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -1,21 +1,34 @@
 package com.hmdp.utils;
 
 import ch.qos.logback.classic.spi.EventArgUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author wzh
  * @date 2023年11月07日 21:44
- * Description:
+ * Description: 全局id 高32位为秒级时间戳 低32位为当天的序列号
+ * 号段模式下每次通过INCRBY预留一段序列号 在本地分配 用掉80%时异步预取下一段
  */
+@Slf4j
 @Component
-public class RedisIdWorker {
+public class RedisIdWorker implements IdGenerator {
     /**
      * 开始时间戳
      */
@@ -23,24 +36,186 @@ public class RedisIdWorker {
 
     private static final int BITS_OFFSET = 32;
 
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 是否使用号段模式
+     */
+    @Value("${hmdp.id.segment.enabled:true}")
+    private boolean segmentEnabled;
+
+    /**
+     * 每次预留的序列号个数
+     */
+    @Value("${hmdp.id.segment.step:1000}")
+    private long step;
+
+    /**
+     * 当前号段用掉多少比例时预取下一段
+     */
+    @Value("${hmdp.id.segment.prefetch-ratio:0.8}")
+    private double prefetchRatio;
+
+    /**
+     * 计算本地时间用的时区 时间戳和日期与LocalDateTime.now()一致
+     */
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    /**
+     * 每个业务前缀一个号段缓冲
+     */
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
     public long nextId(String keyPrefix) {
+        if (segmentEnabled) {
+            return nextSegmentId(keyPrefix);
+        }
         //1生成时间戳
         LocalDateTime now = LocalDateTime.now();
         long second = now.toEpochSecond(ZoneOffset.UTC);
         long stamp = second - BEGIN_TIMESTAMP;
         //2生成序列号
         //2.1 获取当前日期，精确到天
-        String today = now.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+        String today = now.format(DAY_FORMATTER);
         //2.2自增长id
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + today);
+        long count = stringRedisTemplate.opsForValue().increment(keyOf(keyPrefix, today));
 
         //3拼接并返回 左移后低位或
         return stamp << BITS_OFFSET | count;
     }
 
+    /**
+     * 号段模式 序列号从本地号段中取 只有号段用完且预取没有完成时才同步访问redis
+     */
+    private long nextSegmentId(String keyPrefix) {
+        //1 本地时间的秒数 不创建对象
+        long millis = System.currentTimeMillis();
+        long second = Math.floorDiv(millis + timeZone.getOffset(millis), 1000L);
+        long day = Math.floorDiv(second, 86400L);
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new);
+        while (true) {
+            Segment segment = buffer.current;
+            //2 号段属于前一天 丢弃 新的一天序列号从1开始 继续使用旧号段可能与新号段重复
+            if (segment == null || segment.day != day) {
+                buffer.switchDay(day);
+                continue;
+            }
+            long count = segment.cursor.getAndIncrement();
+            if (count < segment.end) {
+                //3 用掉一定比例后异步预取下一段
+                if (count >= segment.prefetchAt) {
+                    buffer.prefetch(segment);
+                }
+                return (second - BEGIN_TIMESTAMP) << BITS_OFFSET | count;
+            }
+            //4 当前号段已经用完 切换到下一段
+            buffer.next(segment);
+        }
+    }
+
+    /**
+     * INCRBY预留一段序列号 返回值为这一段的最大值
+     */
+    private Segment allocate(String keyPrefix, long day) {
+        String today = LocalDate.ofEpochDay(day).format(DAY_FORMATTER);
+        Long max = stringRedisTemplate.opsForValue().increment(keyOf(keyPrefix, today), step);
+        long start = max - step + 1;
+        return new Segment(day, start, max + 1, start + (long) (step * prefetchRatio));
+    }
+
+    private static String keyOf(String keyPrefix, String today) {
+        return "icr:" + keyPrefix + ":" + today;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * 一段序列号 [start, end) 由cursor无锁分配
+     */
+    private static class Segment {
+        private final long day;
+        private final long end;
+        private final long prefetchAt;
+        private final AtomicLong cursor;
+
+        private Segment(long day, long start, long end, long prefetchAt) {
+            this.day = day;
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 双号段缓冲 current正在使用 next为预取好的下一段
+     */
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean prefetching = new AtomicBoolean();
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        private void prefetch(Segment segment) {
+            if (next != null || !prefetching.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        Segment fetched = allocate(keyPrefix, segment.day);
+                        synchronized (this) {
+                            //预取期间已经切换了号段或日期 预取的号段直接作废
+                            if (current == segment) {
+                                next = fetched;
+                            }
+                        }
+                    } catch (Exception e) {
+                        log.warn("预取{}的号段失败 号段用完时同步获取", keyPrefix, e);
+                    } finally {
+                        prefetching.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                prefetching.set(false);
+            }
+        }
+
+        private synchronized void next(Segment exhausted) {
+            //其他线程已经切换过
+            if (current != exhausted) {
+                return;
+            }
+            Segment fetched = next;
+            next = null;
+            current = fetched != null && fetched.day == exhausted.day ? fetched : allocate(keyPrefix, exhausted.day);
+        }
+
+        private synchronized void switchDay(long day) {
+            if (current != null && current.day == day) {
+                return;
+            }
+            next = null;
+            current = allocate(keyPrefix, day);
+        }
+    }
+
     /**
      * 计算起始时间秒数 以2022年开始
      *
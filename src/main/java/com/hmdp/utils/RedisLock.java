@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author wzh
+ * @date 2023年12月28日 20:20
+ * Description: 基于redis hash的可重入锁 field为持有者标识(节点uuid:线程id) value为重入次数
+ * 由RedisLockFactory创建 本身不保存状态 可以随用随建
+ */
+public class RedisLock implements ILock {
+
+    private final String name;
+
+    private final RedisLockFactory factory;
+
+    RedisLock(String name, RedisLockFactory factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+
+    @Override
+    public boolean tryLock() {
+        return tryLock(0, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) {
+        String owner = factory.ownerOfCurrentThread();
+        boolean watchdog = leaseTime <= 0;
+        long leaseMillis = watchdog ? factory.getWatchdogTimeout() : unit.toMillis(leaseTime);
+        long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+        while (true) {
+            //1 执行加锁脚本 返回null表示成功 否则为锁的剩余有效期
+            Long ttl = factory.acquire(name, owner, leaseMillis);
+            if (ttl == null) {
+                //2 没有指定有效期 交给看门狗续期
+                if (watchdog) {
+                    factory.scheduleRenewal(name, owner);
+                }
+                return true;
+            }
+            //3 等待超时 放弃
+            long remain = deadline - System.currentTimeMillis();
+            if (remain <= 0) {
+                return false;
+            }
+            //4 休眠后重试 不超过剩余等待时间和锁的剩余有效期
+            long sleep = Math.min(factory.getRetryInterval(), remain);
+            if (ttl > 0) {
+                sleep = Math.min(sleep, ttl);
+            }
+            try {
+                Thread.sleep(Math.max(sleep, 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void unlock() {
+        String owner = factory.ownerOfCurrentThread();
+        Long result = factory.release(name, owner);
+        if (result == null) {
+            throw new IllegalMonitorStateException("当前线程未持有锁 " + name);
+        }
+        //重入次数减到0 锁已删除 停止续期
+        if (result == 1) {
+            factory.cancelRenewal(name, owner);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author wzh
+ * @date 2023年12月28日 20:35
+ * Description: 分布式锁工厂 持有加锁/释放/续期脚本和看门狗线程
+ * 加锁和释放都由lua脚本原子执行 释放前校验持有者 不会误删其他节点或线程的锁
+ */
+@Slf4j
+@Component
+public class RedisLockFactory {
+
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        LOCK_SCRIPT = script("lock.lua");
+        UNLOCK_SCRIPT = script("unlock.lua");
+        RENEW_SCRIPT = script("renew.lua");
+    }
+
+    /**
+     * 节点标识 与线程id拼接作为持有者 区分不同JVM中id相同的线程
+     */
+    private final String id = UUID.randomUUID().toString(true);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 看门狗模式下锁的有效期 每过三分之一续期一次
+     */
+    private final long watchdogTimeout;
+
+    /**
+     * 获取锁失败后重试的间隔
+     */
+    private final long retryInterval;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 正在续期的锁 key为锁名和持有者
+     */
+    private final Map<String, ScheduledFuture<?>> renewals = new ConcurrentHashMap<>();
+
+    public RedisLockFactory(StringRedisTemplate stringRedisTemplate,
+                            @Value("${hmdp.lock.watchdog-timeout:30000}") long watchdogTimeout,
+                            @Value("${hmdp.lock.retry-interval:50}") long retryInterval) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.watchdogTimeout = watchdogTimeout;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * @param name 锁的完整key 例如 lock:order:1010
+     */
+    public ILock getLock(String name) {
+        return new RedisLock(name, this);
+    }
+
+    String ownerOfCurrentThread() {
+        return id + ":" + Thread.currentThread().getId();
+    }
+
+    Long acquire(String name, String owner, long leaseMillis) {
+        return stringRedisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(name), owner, String.valueOf(leaseMillis));
+    }
+
+    Long release(String name, String owner) {
+        return stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(name), owner, String.valueOf(watchdogTimeout));
+    }
+
+    /**
+     * 开始续期 重入时已经在续期则忽略
+     */
+    void scheduleRenewal(String name, String owner) {
+        renewals.computeIfAbsent(renewalKey(name, owner), k -> {
+            long period = Math.max(watchdogTimeout / 3, 1);
+            return watchdog.scheduleAtFixedRate(() -> renew(name, owner), period, period, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    void cancelRenewal(String name, String owner) {
+        ScheduledFuture<?> future = renewals.remove(renewalKey(name, owner));
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void renew(String name, String owner) {
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(name), owner, String.valueOf(watchdogTimeout));
+            //锁已经不存在或被别人持有 停止续期
+            if (renewed == null || renewed == 0) {
+                cancelRenewal(name, owner);
+            }
+        } catch (Exception e) {
+            //redis暂时不可用 下一轮继续尝试 锁在有效期内不会丢失
+            log.warn("锁{}续期失败", name, e);
+        }
+    }
+
+    private static String renewalKey(String name, String owner) {
+        return name + "|" + owner;
+    }
+
+    private static DefaultRedisScript<Long> script(String location) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(location));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    long getWatchdogTimeout() {
+        return watchdogTimeout;
+    }
+
+    long getRetryInterval() {
+        return retryInterval;
+    }
+
+    /**
+     * @return 当前由看门狗续期的锁数量
+     */
+    public int renewingCount() {
+        return renewals.size();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+}
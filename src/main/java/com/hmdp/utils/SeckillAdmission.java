@@ -0,0 +1,147 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ADMISSION_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENT_ADMISSION_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * @author wzh
+ * @date 2024年01月06日 15:20
+ * Description: 秒杀准入控制 每张秒杀券一个redis令牌桶 只放行剩余库存若干倍的请求 其余请求直接拒绝
+ * 令牌桶为空时本地记录需要等待的时间 等待期间的请求在本地拒绝 不访问redis
+ * 分段的秒杀券每个分段一个令牌桶 用户只访问所在分段的令牌桶和库存
+ */
+@Component
+public class SeckillAdmission {
+
+    private static final DefaultRedisScript<Long> ADMISSION_SCRIPT;
+
+    static {
+        ADMISSION_SCRIPT = new DefaultRedisScript<>();
+        ADMISSION_SCRIPT.setLocation(new ClassPathResource("admission.lua"));
+        ADMISSION_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillStockManager seckillStockManager;
+
+    private final SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    private final boolean enabled;
+
+    /**
+     * 每个周期放行的请求数为剩余库存的多少倍
+     */
+    private final double multiple;
+
+    /**
+     * 令牌桶补满的周期 毫秒
+     */
+    private final long refillInterval;
+
+    /**
+     * 本地预过滤 key为令牌桶 令牌桶在此时间之前都是空的
+     */
+    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedLocal = new LongAdder();
+    private final LongAdder rejectedRemote = new LongAdder();
+
+    /**
+     * 按秒杀券统计的拒绝次数 只有存在库存的秒杀券才会被拒绝 数量有限
+     */
+    private final Map<Long, LongAdder> rejectedByVoucher = new ConcurrentHashMap<>();
+
+    public SeckillAdmission(StringRedisTemplate stringRedisTemplate, SeckillStockManager seckillStockManager,
+                            SeckillSoldOutRegistry seckillSoldOutRegistry,
+                            @Value("${hmdp.seckill.admission.enabled:true}") boolean enabled,
+                            @Value("${hmdp.seckill.admission.multiple:3}") double multiple,
+                            @Value("${hmdp.seckill.admission.refill-interval:1000}") long refillInterval) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillStockManager = seckillStockManager;
+        this.seckillSoldOutRegistry = seckillSoldOutRegistry;
+        this.enabled = enabled;
+        this.multiple = multiple;
+        this.refillInterval = refillInterval;
+    }
+
+    /**
+     * @return 是否放行
+     */
+    public boolean tryAdmit(Long voucherId, Long userId) {
+        if (!enabled) {
+            return true;
+        }
+        //1 已经售罄或结束 放行 由服务中的售罄标记在内存中直接拒绝
+        if (seckillSoldOutRegistry.finishedReason(voucherId) != null) {
+            admitted.increment();
+            return true;
+        }
+        //2 选择令牌桶 分段的秒杀券使用用户所在分段的令牌桶 容量按该分段的库存计算
+        List<String> keys;
+        int segments = seckillStockManager.segmentsOf(voucherId);
+        if (segments > 1) {
+            int segment = SeckillStockManager.homeSegment(userId, segments);
+            keys = Arrays.asList(SeckillStockManager.segmentKey(voucherId, segment),
+                    String.format(SECKILL_SEGMENT_ADMISSION_KEY, voucherId, segment));
+        } else {
+            keys = Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ADMISSION_KEY + voucherId);
+        }
+        String bucket = keys.get(1);
+        //3 本地预过滤 令牌桶还是空的 直接拒绝
+        long now = System.currentTimeMillis();
+        Long until = blockedUntil.get(bucket);
+        if (until != null && now < until) {
+            reject(rejectedLocal, voucherId);
+            return false;
+        }
+        //4 从redis令牌桶中取令牌
+        Long wait = stringRedisTemplate.execute(ADMISSION_SCRIPT, keys, String.valueOf(multiple),
+                String.valueOf(now), String.valueOf(refillInterval), segments > 1 ? "1" : "0");
+        if (wait == null || wait <= 0) {
+            blockedUntil.remove(bucket);
+            admitted.increment();
+            return true;
+        }
+        //5 令牌不足 记录下一个令牌产生的时间 在此之前本地拒绝
+        blockedUntil.put(bucket, now + wait);
+        reject(rejectedRemote, voucherId);
+        return false;
+    }
+
+    private void reject(LongAdder counter, Long voucherId) {
+        counter.increment();
+        rejectedByVoucher.computeIfAbsent(voucherId, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return 放行和拒绝的请求数 拒绝分为本地拒绝和redis拒绝
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<Long, Long> vouchers = new HashMap<>();
+        rejectedByVoucher.forEach((voucherId, count) -> vouchers.put(voucherId, count.sum()));
+        stats.put("enabled", enabled);
+        stats.put("multiple", multiple);
+        stats.put("admitted", admitted.sum());
+        stats.put("rejectedLocal", rejectedLocal.sum());
+        stats.put("rejectedRemote", rejectedRemote.sum());
+        stats.put("rejectedByVoucher", vouchers);
+        return stats;
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * @author wzh
+ * @date 2024年01月03日 19:40
+ * Description: 本地售罄标记 秒杀券抢光或结束后 各节点直接在内存中拒绝请求 不再访问redis
+ * 任一节点发现售罄后通过pub/sub通知所有节点 库存恢复时清除标记
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry implements MessageListener {
+
+    /**
+     * 已经售罄或结束的秒杀券 value为SeckillStockManager中的失败原因
+     */
+    private final Map<Long, Integer> finished = new ConcurrentHashMap<>();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SeckillSoldOutRegistry(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * @return 售罄或结束时返回原因 否则返回null
+     */
+    public Integer finishedReason(Long voucherId) {
+        return finished.get(voucherId);
+    }
+
+    /**
+     * 根据秒杀资格的判断结果标记 只有库存不足和已经结束才标记 第一次标记时通知其他节点
+     */
+    public void onResult(Long voucherId, int result) {
+        if (result != SeckillStockManager.OUT_OF_STOCK && result != SeckillStockManager.ENDED) {
+            return;
+        }
+        if (finished.putIfAbsent(voucherId, result) == null) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":" + result);
+        }
+    }
+
+    /**
+     * 库存或时间被修改后清除所有节点的标记
+     */
+    public void clear(Long voucherId) {
+        finished.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":" + SeckillStockManager.SUCCESS);
+    }
+
+    /**
+     * 收到其他节点的通知 消息格式 voucherId:原因 原因为SUCCESS时表示清除
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(':');
+        Long voucherId = Long.valueOf(body.substring(0, index));
+        int reason = Integer.parseInt(body.substring(index + 1));
+        if (reason == SeckillStockManager.SUCCESS) {
+            finished.remove(voucherId);
+        } else {
+            finished.put(voucherId, reason);
+        }
+        log.debug("秒杀券{}售罄标记:{}", voucherId, reason);
+    }
+}
@@ -0,0 +1,317 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENT_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * @author wzh
+ * @date 2023年12月20日 21:05
+ * Description: redis中的秒杀库存 秒杀资格通过lua脚本原子判断 不合格的请求不访问数据库
+ * 分段的秒杀券每次请求只访问用户所在的一个分段 分段抢空时逐个向其他分段借用 订单按分段写入多个stream
+ */
+@Component
+public class SeckillStockManager {
+
+    public static final int SUCCESS = 0;
+    public static final int OUT_OF_STOCK = 1;
+    public static final int DUPLICATE = 2;
+    public static final int NOT_STARTED = 3;
+    public static final int ENDED = 4;
+    public static final int NOT_EXIST = 5;
+    public static final int FAILED = 6;
+
+    private static final String[] MESSAGES = {
+            null, "晚了一步，优惠券被抢光了!", "同一账户只能购买一张", "秒杀尚未开始", "秒杀已经结束", "优惠券不存在", "下单失败，请稍后重试"
+    };
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> SEGMENT_SCRIPT;
+    private static final DefaultRedisScript<Long> BORROW_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = script("seckill.lua");
+        SEGMENT_SCRIPT = script("seckill-segment.lua");
+        BORROW_SCRIPT = script("seckill-borrow.lua");
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 订单stream的数量 分段秒杀券的订单按分段分散写入 不分段的秒杀券只写入第一个
+     */
+    private final int orderStreams;
+
+    /**
+     * 秒杀券的库存分段数 创建后不会改变 缓存在本地 避免每次判断资格前多查一次redis
+     */
+    private final Map<Long, Integer> segmentCount = new ConcurrentHashMap<>();
+
+    public SeckillStockManager(StringRedisTemplate stringRedisTemplate,
+                               @Value("${hmdp.seckill.order.streams:1}") int orderStreams) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderStreams = Math.max(orderStreams, 1);
+    }
+
+    /**
+     * 写入秒杀券的库存和起止时间 新增秒杀券时调用
+     * 指定了分段数时库存平均拆分到各个分段 余数分给前面的分段 hash中只保留起止时间和分段数
+     */
+    public void save(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        Integer segments = voucher.getSegments();
+        if (segments == null || segments <= 1) {
+            stringRedisTemplate.opsForHash().putAll(SECKILL_STOCK_KEY + voucherId, toHash(voucher));
+            return;
+        }
+        int stock = voucher.getStock();
+        Map<String, String> counters = new HashMap<>(segments);
+        for (int i = 0; i < segments; i++) {
+            counters.put(segmentKey(voucherId, i), String.valueOf(stock / segments + (i < stock % segments ? 1 : 0)));
+        }
+        stringRedisTemplate.opsForValue().multiSet(counters);
+        Map<String, String> hash = toHash(voucher);
+        hash.remove("stock");
+        hash.put("segments", segments.toString());
+        stringRedisTemplate.opsForHash().putAll(SECKILL_STOCK_KEY + voucherId, hash);
+        segmentCount.put(voucherId, segments);
+    }
+
+    /**
+     * 只修改起止时间 不影响已经扣减的库存
+     */
+    public void saveTime(SeckillVoucher voucher) {
+        Map<String, String> hash = toHash(voucher);
+        hash.remove("stock");
+        stringRedisTemplate.opsForHash().putAll(SECKILL_STOCK_KEY + voucher.getVoucherId(), hash);
+    }
+
+    /**
+     * 秒杀券的hash或分段库存任意一个存在都算已经写入 hash丢失时分段计数器中仍然是扣减后的库存
+     */
+    public boolean exists(Long voucherId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(SECKILL_STOCK_KEY + voucherId)) || segmented(voucherId);
+    }
+
+    /**
+     * redis中不存在时才写入 同时恢复已经下单的用户 用于启动预热
+     * 数据库中不保存分段数 已经按分段写入的秒杀券不能再写入不分段的库存 否则会覆盖已经卖出的部分
+     *
+     * @param buyers 数据库中已经下单的用户
+     * @return 是否写入
+     */
+    public boolean saveIfAbsent(SeckillVoucher voucher, Collection<Long> buyers) {
+        String key = SECKILL_STOCK_KEY + voucher.getVoucherId();
+        if (segmented(voucher.getVoucherId()) || stringRedisTemplate.opsForHash().hasKey(key, "segments")) {
+            return false;
+        }
+        if (!stringRedisTemplate.opsForHash().putIfAbsent(key, "stock", voucher.getStock().toString())) {
+            return false;
+        }
+        //库存只由putIfAbsent写入 避免覆盖其他节点已经扣减的库存
+        Map<String, String> hash = toHash(voucher);
+        hash.remove("stock");
+        stringRedisTemplate.opsForHash().putAll(key, hash);
+        if (!buyers.isEmpty()) {
+            stringRedisTemplate.opsForSet().add(SECKILL_ORDER_KEY + voucher.getVoucherId(),
+                    buyers.stream().map(String::valueOf).toArray(String[]::new));
+        }
+        return true;
+    }
+
+    /**
+     * 判断秒杀资格 成功时已经扣减redis库存 记录用户 并把订单发送到消息队列
+     * 分段的秒杀券起止时间由调用方按本地缓存判断 脚本中不再读取秒杀券信息
+     *
+     * @param orderId 预先生成的订单id
+     * @return SUCCESS或失败原因
+     */
+    public int tryAcquire(Long voucherId, Long userId, Long orderId) {
+        int segments = segmentsOf(voucherId);
+        if (segments > 1) {
+            return tryAcquireSegment(voucherId, userId, orderId, segments);
+        }
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, SECKILL_ORDER_STREAM),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), orderId.toString(), voucherId.toString());
+        return result == null ? NOT_EXIST : result.intValue();
+    }
+
+    /**
+     * 先在用户所在的分段判断一人一单并扣减库存 抢空时依次向其他分段借用 每次脚本调用只访问一个分段
+     * 订单消息在脚本之外写入 写入失败时归还库存
+     */
+    private int tryAcquireSegment(Long voucherId, Long userId, Long orderId, int segments) {
+        int home = homeSegment(userId, segments);
+        Long result = stringRedisTemplate.execute(SEGMENT_SCRIPT,
+                Arrays.asList(segmentKey(voucherId, home), segmentOrderKey(voucherId, home)), userId.toString());
+        if (result == null) {
+            return NOT_EXIST;
+        }
+        if (result == DUPLICATE) {
+            return DUPLICATE;
+        }
+        int used = result == SUCCESS ? home : borrow(voucherId, home, segments);
+        if (used < 0) {
+            //所有分段都抢空了 释放一人一单的资格
+            stringRedisTemplate.opsForSet().remove(segmentOrderKey(voucherId, home), userId.toString());
+            return OUT_OF_STOCK;
+        }
+        Map<String, String> order = new HashMap<>(4);
+        order.put("userId", userId.toString());
+        order.put("voucherId", voucherId.toString());
+        order.put("id", orderId.toString());
+        order.put("segment", String.valueOf(used));
+        try {
+            stringRedisTemplate.opsForStream().add(orderStream(used), order);
+        } catch (RuntimeException e) {
+            rollback(voucherId, userId, used);
+            throw e;
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * @return 借到库存的分段 都没有库存时返回-1
+     */
+    private int borrow(Long voucherId, int home, int segments) {
+        for (int i = 1; i < segments; i++) {
+            int segment = (home + i) % segments;
+            Long result = stringRedisTemplate.execute(BORROW_SCRIPT, Collections.singletonList(segmentKey(voucherId, segment)));
+            if (result != null && result == SUCCESS) {
+                return segment;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 下单失败时归还库存并移除用户 分段库存归还到实际扣减的分段 用户从所在的分段移除
+     *
+     * @param segment 订单消息中记录的分段 不分段时为null
+     */
+    public void rollback(Long voucherId, Long userId, Integer segment) {
+        releaseStock(voucherId, segment);
+        releaseBuyer(voucherId, userId);
+    }
+
+    /**
+     * 只归还库存 用户已经在数据库中下过单时使用
+     */
+    public void releaseStock(Long voucherId, Integer segment) {
+        if (segmentsOf(voucherId) > 1 && segment != null) {
+            stringRedisTemplate.opsForValue().increment(segmentKey(voucherId, segment));
+            return;
+        }
+        stringRedisTemplate.opsForHash().increment(SECKILL_STOCK_KEY + voucherId, "stock", 1);
+    }
+
+    /**
+     * 只移除用户 数据库库存不足时使用 库存不归还 避免redis中的库存多于数据库
+     */
+    public void releaseBuyer(Long voucherId, Long userId) {
+        int segments = segmentsOf(voucherId);
+        if (segments > 1) {
+            stringRedisTemplate.opsForSet().remove(segmentOrderKey(voucherId, homeSegment(userId, segments)), userId.toString());
+            return;
+        }
+        stringRedisTemplate.opsForSet().remove(SECKILL_ORDER_KEY + voucherId, userId.toString());
+    }
+
+    /**
+     * @return 所有订单stream 第一个为不分段秒杀券使用的stream.orders
+     */
+    public List<String> orderStreams() {
+        List<String> streams = new ArrayList<>(orderStreams);
+        for (int i = 0; i < orderStreams; i++) {
+            streams.add(orderStream(i));
+        }
+        return streams;
+    }
+
+    private String orderStream(int segment) {
+        int shard = segment % orderStreams;
+        return shard == 0 ? SECKILL_ORDER_STREAM : SECKILL_ORDER_STREAM + ":" + shard;
+    }
+
+    /**
+     * @return 秒杀券的库存分段数 不分段或秒杀券不存在时为1
+     */
+    public int segmentsOf(Long voucherId) {
+        Integer segments = segmentCount.get(voucherId);
+        if (segments != null) {
+            return segments;
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(SECKILL_STOCK_KEY + voucherId, Arrays.asList("begin", "segments"));
+        //秒杀券还不存在时不缓存 其他节点稍后可能创建分段的秒杀券
+        if (values.get(0) == null) {
+            return 1;
+        }
+        segments = values.get(1) == null ? 1 : Integer.parseInt(values.get(1).toString());
+        segmentCount.put(voucherId, segments);
+        return segments;
+    }
+
+    /**
+     * 第一个分段的计数器存在说明按分段写入过
+     */
+    private boolean segmented(Long voucherId) {
+        return segmentCount.getOrDefault(voucherId, 1) > 1
+                || Boolean.TRUE.equals(stringRedisTemplate.hasKey(segmentKey(voucherId, 0)));
+    }
+
+    static String segmentKey(Long voucherId, int segment) {
+        return String.format(SECKILL_SEGMENT_KEY, voucherId, segment);
+    }
+
+    static String segmentOrderKey(Long voucherId, int segment) {
+        return String.format(SECKILL_SEGMENT_ORDER_KEY, voucherId, segment);
+    }
+
+    static int homeSegment(Long userId, int segments) {
+        return Math.floorMod(Long.hashCode(userId), segments);
+    }
+
+    public static String message(int code) {
+        return MESSAGES[code];
+    }
+
+    private static DefaultRedisScript<Long> script(String location) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(location));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    private static Map<String, String> toHash(SeckillVoucher voucher) {
+        Map<String, String> hash = new HashMap<>(4);
+        hash.put("stock", voucher.getStock().toString());
+        hash.put("begin", String.valueOf(toEpochMilli(voucher.getBeginTime())));
+        hash.put("end", String.valueOf(toEpochMilli(voucher.getEndTime())));
+        return hash;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
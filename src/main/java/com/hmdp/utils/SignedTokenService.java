@@ -0,0 +1,226 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_BLOOM_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKE_CHANNEL;
+
+/**
+ * @author wzh
+ * @date 2024年01月25日 16:30
+ * Description: 无状态登录令牌 用户信息和过期时间编码在令牌中 用HMAC-SHA256签名 校验完全在本地完成
+ * 登出的令牌记录在redis的有序集合中(按过期时间排序 过期后清理) 本地用布隆过滤器判断 只有可能被吊销时才查询redis
+ * 令牌格式 base64url(用户信息json).base64url(签名)
+ * hmdp.login.mode=signed时启用
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.login.mode", havingValue = "signed")
+public class SignedTokenService implements MessageListener {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final byte[] secret;
+
+    /**
+     * 令牌有效期 毫秒
+     */
+    private final long ttl;
+
+    private final long revokedBits;
+
+    private final int revokedHashes;
+
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * 已吊销令牌的本地布隆过滤器 定时按redis重建 去掉已经过期的令牌
+     */
+    private volatile RedisBloomFilter revoked;
+
+    /**
+     * 重建过滤器期间写入的令牌不能丢失 写入本地和替换过滤器都在锁内进行
+     */
+    private final Object revokedLock = new Object();
+
+    public SignedTokenService(StringRedisTemplate stringRedisTemplate,
+                              @Value("${hmdp.login.signed.secret:}") String secret,
+                              @Value("${hmdp.login.signed.ttl:1440}") long ttl,
+                              @Value("${hmdp.login.signed.revoked-bits:1048576}") long revokedBits,
+                              @Value("${hmdp.login.signed.revoked-hashes:5}") int revokedHashes) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        if (StrUtil.isBlank(secret)) {
+            //未配置密钥时随机生成 只适用于单节点 重启后已签发的令牌全部失效
+            secret = UUID.randomUUID().toString(true);
+            log.warn("未配置hmdp.login.signed.secret 使用随机密钥");
+        }
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.ttl = TimeUnit.MINUTES.toMillis(ttl);
+        this.revokedBits = revokedBits;
+        this.revokedHashes = revokedHashes;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.revoked = newFilter();
+    }
+
+    /**
+     * 签发令牌
+     */
+    public String issue(UserDTO user) {
+        JSONObject payload = JSONUtil.createObj()
+                .set("id", user.getId())
+                .set("nickName", user.getNickName())
+                .set("icon", user.getIcon())
+                .set("exp", System.currentTimeMillis() + ttl)
+                .set("jti", UUID.fastUUID().toString(true));
+        String body = Base64.encodeUrlSafe(payload.toString());
+        return body + "." + Base64.encodeUrlSafe(sign(body));
+    }
+
+    /**
+     * 校验令牌 签名错误 已过期或已吊销都返回null
+     */
+    public UserDTO verify(String token) {
+        JSONObject payload = parse(token);
+        if (payload == null || isRevoked(payload.getStr("jti"))) {
+            return null;
+        }
+        UserDTO user = new UserDTO();
+        user.setId(payload.getLong("id"));
+        user.setNickName(payload.getStr("nickName"));
+        user.setIcon(payload.getStr("icon"));
+        return user;
+    }
+
+    /**
+     * 吊销令牌 记录到过期时间为止 并通知其他节点
+     */
+    public void revoke(String token) {
+        JSONObject payload = parse(token);
+        if (payload == null) {
+            return;
+        }
+        String jti = payload.getStr("jti");
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, jti, payload.getLong("exp"));
+        stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, now);
+        putLocal(jti);
+        stringRedisTemplate.convertAndSend(LOGIN_REVOKE_CHANNEL, jti);
+    }
+
+    /**
+     * 启动时和定时从redis重建本地过滤器 防止漏掉广播消息 同时去掉已经过期的令牌
+     * 查询redis和替换过滤器之间收到的吊销通知会等待替换完成后写入新的过滤器
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${hmdp.login.signed.reload-interval:60000}", initialDelayString = "${hmdp.login.signed.reload-interval:60000}")
+    public void reload() {
+        synchronized (revokedLock) {
+            try {
+                Set<String> jtis = stringRedisTemplate.opsForZSet()
+                        .rangeByScore(LOGIN_REVOKED_KEY, System.currentTimeMillis(), Double.MAX_VALUE);
+                RedisBloomFilter filter = newFilter();
+                if (jtis != null) {
+                    jtis.forEach(filter::putLocal);
+                }
+                revoked = filter;
+            } catch (Exception e) {
+                log.warn("加载已吊销的令牌失败", e);
+            }
+        }
+    }
+
+    /**
+     * 收到其他节点吊销令牌的通知 消息内容为jti
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        putLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void putLocal(String jti) {
+        synchronized (revokedLock) {
+            revoked.putLocal(jti);
+        }
+    }
+
+    /**
+     * 校验签名和有效期
+     *
+     * @return 令牌中的用户信息 校验失败返回null
+     */
+    private JSONObject parse(String token) {
+        int index = token.indexOf('.');
+        if (index <= 0) {
+            return null;
+        }
+        String body = token.substring(0, index);
+        try {
+            byte[] signature = Base64.decode(token.substring(index + 1));
+            if (!MessageDigest.isEqual(sign(body), signature)) {
+                return null;
+            }
+            JSONObject payload = JSONUtil.parseObj(Base64.decodeStr(body));
+            Long exp = payload.getLong("exp");
+            return exp == null || exp <= System.currentTimeMillis() ? null : payload;
+        } catch (Exception e) {
+            //格式错误的令牌
+            return null;
+        }
+    }
+
+    /**
+     * 布隆过滤器判断可能被吊销时再查询redis确认
+     */
+    private boolean isRevoked(String jti) {
+        if (jti == null) {
+            return true;
+        }
+        if (!revoked.mightContain(jti)) {
+            return false;
+        }
+        return stringRedisTemplate.opsForZSet().score(LOGIN_REVOKED_KEY, jti) != null;
+    }
+
+    private byte[] sign(String body) {
+        return macs.get().doFinal(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret, ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private RedisBloomFilter newFilter() {
+        return new RedisBloomFilter("revoked", LOGIN_REVOKED_BLOOM_KEY, revokedBits, revokedHashes);
+    }
+}
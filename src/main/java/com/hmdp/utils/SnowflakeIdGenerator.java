@@ -0,0 +1,240 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TIME_KEY;
+
+/**
+ * @author wzh
+ * @date 2024年01月15日 20:30
+ * Description: 雪花算法id 1位符号 41位毫秒时间戳 10位worker id 12位毫秒内序列号 全部在本地生成
+ * worker id启动时从redis租用 心跳续租 并记录最后使用的时间戳 下一个租到该id的节点从这个时间之后开始
+ * 时钟小幅回拨时等待追上 大幅回拨时沿用上次的时间戳继续递增(向后借用) 保证不重复
+ * hmdp.id.generator=snowflake时启用 替换RedisIdWorker
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "hmdp.id.generator", havingValue = "snowflake")
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    /**
+     * 开始时间戳 2022-01-01 00:00:00 UTC 与RedisIdWorker一致
+     */
+    private static final long BEGIN_TIMESTAMP = 1640995200000L;
+
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int TIMESTAMP_SHIFT = WORKER_BITS + SEQUENCE_BITS;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("worker-lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * worker id租约有效期 毫秒
+     */
+    @Value("${hmdp.id.snowflake.lease-ttl:30000}")
+    private long leaseTtl;
+
+    /**
+     * 心跳续租间隔 毫秒 应明显小于租约有效期
+     */
+    @Value("${hmdp.id.snowflake.heartbeat:10000}")
+    private long heartbeat;
+
+    /**
+     * 时钟回拨不超过该毫秒数时原地等待 超过则借用上次的时间戳继续生成
+     */
+    @Value("${hmdp.id.snowflake.max-wait:5}")
+    private long maxWait;
+
+    /**
+     * 当前节点的标识 作为租约的value
+     */
+    private final String owner = UUID.randomUUID().toString(true);
+
+    /**
+     * 上一个生成的id 时间戳 worker id 序列号都在里面 一次CAS即可推进 不需要加锁
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    private volatile long workerId = -1;
+
+    /**
+     * 租约在本地的截止时间 过期后停止发号 避免与接手该worker id的节点重复
+     */
+    private volatile long leaseDeadline;
+
+    /**
+     * 是否处于借用时间戳的状态 只在进入时打印一次告警
+     */
+    private volatile boolean borrowing;
+
+    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "id-worker-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        acquire();
+        heartbeatExecutor.scheduleWithFixedDelay(this::renew, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 雪花算法的id与业务无关 keyPrefix只为兼容IdGenerator
+     */
+    @Override
+    public long nextId(String keyPrefix) {
+        if (System.currentTimeMillis() >= leaseDeadline) {
+            throw new IllegalStateException("worker id租约已过期 暂停生成id");
+        }
+        while (true) {
+            long prev = last.get();
+            long lastTime = prev >>> TIMESTAMP_SHIFT;
+            long now = System.currentTimeMillis() - BEGIN_TIMESTAMP;
+            long next;
+            if (now > lastTime) {
+                //进入新的毫秒 序列号从0开始
+                next = now << TIMESTAMP_SHIFT | prev & (MAX_WORKER_ID << SEQUENCE_BITS);
+                if (borrowing) {
+                    borrowing = false;
+                }
+            } else if (now == lastTime || lastTime - now > maxWait) {
+                //同一毫秒内或大幅回拨 序列号加一 用完时进位到下一毫秒
+                next = increment(prev);
+                if (now != lastTime && !borrowing) {
+                    borrowing = true;
+                    log.warn("时钟回拨{}ms 借用时间戳继续生成id", lastTime - now);
+                }
+            } else {
+                //小幅回拨或上一毫秒的序列号已经用完 等待时钟追上
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(lastTime - now));
+                continue;
+            }
+            if (last.compareAndSet(prev, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 序列号加一 溢出时跳过worker id的位进位到时间戳
+     */
+    private static long increment(long id) {
+        if ((id & SEQUENCE_MASK) < SEQUENCE_MASK) {
+            return id + 1;
+        }
+        return ((id >>> TIMESTAMP_SHIFT) + 1) << TIMESTAMP_SHIFT | id & (MAX_WORKER_ID << SEQUENCE_BITS);
+    }
+
+    /**
+     * 从随机位置开始依次尝试租用一个worker id
+     */
+    private void acquire() {
+        long start = ThreadLocalRandom.current().nextLong(MAX_WORKER_ID + 1);
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long candidate = (start + i) & MAX_WORKER_ID;
+            long begin = System.currentTimeMillis();
+            Long result = stringRedisTemplate.execute(LEASE_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + candidate), owner, String.valueOf(leaseTtl));
+            if (result == null || result != 1) {
+                continue;
+            }
+            switchTo(candidate);
+            leaseDeadline = begin + leaseTtl;
+            log.info("租用worker id {}", candidate);
+            return;
+        }
+        throw new IllegalStateException("没有可用的worker id");
+    }
+
+    /**
+     * 切换到新的worker id 时间戳不早于上一个持有者最后记录的时间
+     */
+    private void switchTo(long candidate) {
+        String time = stringRedisTemplate.opsForValue().get(ID_WORKER_TIME_KEY + candidate);
+        long previous = StrUtil.isBlank(time) ? 0 : Long.parseLong(time);
+        while (true) {
+            long prev = last.get();
+            long lastTime = Math.max(prev >>> TIMESTAMP_SHIFT, previous + 1);
+            if (last.compareAndSet(prev, lastTime << TIMESTAMP_SHIFT | candidate << SEQUENCE_BITS | SEQUENCE_MASK)) {
+                break;
+            }
+        }
+        workerId = candidate;
+    }
+
+    /**
+     * 心跳 续租并记录最后使用的时间戳 租约丢失时重新租用
+     */
+    private void renew() {
+        try {
+            long begin = System.currentTimeMillis();
+            Long result = stringRedisTemplate.execute(LEASE_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + workerId), owner, String.valueOf(leaseTtl));
+            if (result == null || result != 1) {
+                log.warn("worker id {}的租约已被其他节点持有 重新租用", workerId);
+                acquire();
+                return;
+            }
+            leaseDeadline = begin + leaseTtl;
+            saveTime();
+        } catch (Exception e) {
+            log.error("worker id续租失败", e);
+        }
+    }
+
+    private void saveTime() {
+        stringRedisTemplate.opsForValue().set(ID_WORKER_TIME_KEY + workerId, String.valueOf(last.get() >>> TIMESTAMP_SHIFT));
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        heartbeatExecutor.shutdownNow();
+        try {
+            saveTime();
+            if (owner.equals(stringRedisTemplate.opsForValue().get(ID_WORKER_KEY + workerId))) {
+                stringRedisTemplate.delete(ID_WORKER_KEY + workerId);
+            }
+        } catch (Exception e) {
+            log.warn("释放worker id {}失败", workerId, e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author wzh
+ * @date 2023年12月17日 15:45
+ * Description: 过期时间随机打散 防止批量写入的key在同一时刻过期造成缓存雪崩
+ * 在原有过期时间上增加 0~percent% 的偏移 只会延长不会缩短
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache.jitter")
+public class TtlJitter {
+
+    /**
+     * random:每次随机 hash:按key计算固定偏移 同一个key每次写入的偏移相同 none:不打散
+     */
+    private String strategy = "hash";
+
+    /**
+     * 默认偏移百分比
+     */
+    private int percent = 10;
+
+    /**
+     * 按key前缀单独配置的偏移百分比 匹配最长的前缀
+     */
+    private Map<String, Integer> prefixPercent = new HashMap<>();
+
+    /**
+     * 计算打散后的过期时间
+     *
+     * @param key        缓存key
+     * @param baseMillis 原有过期时间 毫秒
+     * @return 打散后的过期时间 毫秒
+     */
+    public long apply(String key, long baseMillis) {
+        int p = percentOf(key);
+        if (p <= 0 || baseMillis <= 0 || "none".equals(strategy)) {
+            return baseMillis;
+        }
+        long range = baseMillis * p / 100;
+        if (range <= 0) {
+            return baseMillis;
+        }
+        long offset = "random".equals(strategy)
+                ? ThreadLocalRandom.current().nextLong(range + 1)
+                : (MurmurHash.hash64(key) & Long.MAX_VALUE) % (range + 1);
+        return baseMillis + offset;
+    }
+
+    private int percentOf(String key) {
+        String matched = null;
+        for (String prefix : prefixPercent.keySet()) {
+            if (key.startsWith(prefix) && (matched == null || prefix.length() > matched.length())) {
+                matched = prefix;
+            }
+        }
+        return matched == null ? percent : prefixPercent.get(matched);
+    }
+}
@@ -2,18 +2,44 @@ package com.hmdp.utils;
 
 import com.hmdp.dto.UserDTO;
 
+import java.util.function.Supplier;
+
 public class UserHolder {
     private static final ThreadLocal<UserDTO> tl = new ThreadLocal<>();
 
+    /**
+     * 尚未查询的登录用户 第一次getUser()时才查询 没用到用户的请求不会访问会话存储
+     */
+    private static final ThreadLocal<Supplier<UserDTO>> loader = new ThreadLocal<>();
+
     public static void saveUser(UserDTO user){
         tl.set(user);
     }
 
+    public static void saveUserLoader(Supplier<UserDTO> userLoader){
+        loader.set(userLoader);
+    }
+
     public static UserDTO getUser(){
-        return tl.get();
+        UserDTO user = tl.get();
+        if (user != null) {
+            return user;
+        }
+        Supplier<UserDTO> userLoader = loader.get();
+        if (userLoader == null) {
+            return null;
+        }
+        //只查询一次 查不到也不再重复查询
+        loader.remove();
+        user = userLoader.get();
+        if (user != null) {
+            tl.set(user);
+        }
+        return user;
     }
 
     public static void removeUser(){
         tl.remove();
+        loader.remove();
     }
 }
@@ -0,0 +1,36 @@
+-- 秒杀准入令牌桶 桶容量为剩余库存的倍数 每个周期补满一次 补充速度均匀
+-- 分段的秒杀券每个分段一个令牌桶 与分段库存在同一个slot
+-- KEYS[1] 秒杀券信息 hash: stock 或分段库存计数器
+-- KEYS[2] 令牌桶 hash: tokens ts
+-- ARGV[1] 剩余库存的倍数
+-- ARGV[2] 当前时间 毫秒
+-- ARGV[3] 补满令牌桶的周期 毫秒
+-- ARGV[4] 1:KEYS[1]为分段库存计数器 0:KEYS[1]为秒杀券信息
+-- 返回 0:放行 其他:令牌不足 还需要等待的毫秒数
+local remaining
+if ARGV[4] == '1' then
+    remaining = tonumber(redis.call('get', KEYS[1]) or '0')
+else
+    remaining = tonumber(redis.call('hget', KEYS[1], 'stock') or '0')
+end
+-- 已经售罄或秒杀券不存在 直接放行 由服务中的售罄标记和秒杀资格判断返回原因
+if remaining <= 0 then
+    return 0
+end
+local capacity = math.ceil(remaining * tonumber(ARGV[1]))
+local now = tonumber(ARGV[2])
+local interval = tonumber(ARGV[3])
+local bucket = redis.call('hmget', KEYS[2], 'tokens', 'ts')
+local tokens = tonumber(bucket[1]) or capacity
+local ts = tonumber(bucket[2]) or now
+-- 按流逝的时间补充令牌 不超过容量 库存减少后容量随之变小
+tokens = math.min(capacity, tokens + math.max(now - ts, 0) * capacity / interval)
+local wait = 0
+if tokens >= 1 then
+    tokens = tokens - 1
+else
+    wait = math.ceil((1 - tokens) * interval / capacity)
+end
+redis.call('hset', KEYS[2], 'tokens', tostring(tokens), 'ts', tostring(now))
+redis.call('pexpire', KEYS[2], interval * 2)
+return wait
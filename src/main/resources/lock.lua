@@ -0,0 +1,11 @@
+-- 可重入锁加锁 锁是一个hash field为持有者 value为重入次数
+-- KEYS[1] 锁的key
+-- ARGV[1] 持有者标识 uuid:线程id
+-- ARGV[2] 锁的有效期 毫秒
+-- 返回 nil:加锁成功 其他:锁被别人持有 返回剩余有效期
+if (redis.call('exists', KEYS[1]) == 0) or (redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    redis.call('hincrby', KEYS[1], ARGV[1], 1)
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return nil
+end
+return redis.call('pttl', KEYS[1])
@@ -0,0 +1,10 @@
+-- 看门狗续期 仍是持有者时才重置有效期
+-- KEYS[1] 锁的key
+-- ARGV[1] 持有者标识 uuid:线程id
+-- ARGV[2] 锁的有效期 毫秒
+-- 返回 1:续期成功 0:已经不是持有者
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 1
+end
+return 0
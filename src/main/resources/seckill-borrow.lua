@@ -0,0 +1,8 @@
+-- 用户所在的分段抢空后 向其他分段借用一个库存
+-- KEYS[1] 被借用的分段库存计数器
+-- 返回 0:成功 1:该分段库存不足
+if tonumber(redis.call('get', KEYS[1]) or '0') > 0 then
+    redis.call('decr', KEYS[1])
+    return 0
+end
+return 1
@@ -0,0 +1,16 @@
+-- 分段秒杀券的秒杀资格 只访问用户所在的分段 起止时间已经在服务中按本地缓存判断
+-- 库存和已购用户使用同一个hash tag 集群下在同一个slot
+-- KEYS[1] 分段库存计数器
+-- KEYS[2] 路由到该分段的已购买用户 set
+-- ARGV[1] 用户id
+-- 返回 0:成功 1:本分段库存不足 已经记录用户 由调用方向其他分段借用 2:重复下单
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    return 2
+end
+-- 先记录用户 借用其他分段期间同一用户的请求也会被判为重复
+redis.call('sadd', KEYS[2], ARGV[1])
+if tonumber(redis.call('get', KEYS[1]) or '0') > 0 then
+    redis.call('decr', KEYS[1])
+    return 0
+end
+return 1
@@ -0,0 +1,32 @@
+-- 秒杀资格判断 时间 库存 一人一单 在redis中一次原子完成
+-- KEYS[1] 秒杀券信息 hash: stock begin end
+-- KEYS[2] 已购买的用户 set
+-- KEYS[3] 订单消息队列 stream
+-- ARGV[1] 用户id
+-- ARGV[2] 当前时间 毫秒
+-- ARGV[3] 订单id
+-- ARGV[4] 秒杀券id
+-- 返回 0:成功 1:库存不足 2:重复下单 3:尚未开始 4:已经结束 5:秒杀券不存在
+local voucher = redis.call('hmget', KEYS[1], 'stock', 'begin', 'end')
+if not voucher[1] then
+    return 5
+end
+local now = tonumber(ARGV[2])
+if now < tonumber(voucher[2]) then
+    return 3
+end
+if now > tonumber(voucher[3]) then
+    return 4
+end
+if tonumber(voucher[1]) <= 0 then
+    return 1
+end
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    return 2
+end
+-- 扣减库存 记录用户
+redis.call('hincrby', KEYS[1], 'stock', -1)
+redis.call('sadd', KEYS[2], ARGV[1])
+-- 订单发送到消息队列 由后台消费者写入数据库
+redis.call('xadd', KEYS[3], '*', 'userId', ARGV[1], 'voucherId', ARGV[4], 'id', ARGV[3])
+return 0
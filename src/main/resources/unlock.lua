@@ -0,0 +1,15 @@
+-- 可重入锁释放 只有持有者才能释放 重入次数减到0才删除
+-- KEYS[1] 锁的key
+-- ARGV[1] 持有者标识 uuid:线程id
+-- ARGV[2] 锁的有效期 毫秒
+-- 返回 nil:不是持有者 0:仍然持有 1:已经释放
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then
+    return nil
+end
+local count = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if (count > 0) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 0
+end
+redis.call('del', KEYS[1])
+return 1
@@ -0,0 +1,11 @@
+-- 租用或续租snowflake的worker id 没有人持有或自己持有时写入并重置有效期
+-- KEYS[1] worker id的租约key
+-- ARGV[1] 节点标识
+-- ARGV[2] 租约有效期 毫秒
+-- 返回 1:成功 0:被其他节点持有
+local owner = redis.call('get', KEYS[1])
+if (not owner) or owner == ARGV[1] then
+    redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2])
+    return 1
+end
+return 0
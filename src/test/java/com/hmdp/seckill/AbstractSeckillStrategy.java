@@ -0,0 +1,47 @@
+package com.hmdp.seckill;
+
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.IVoucherService;
+import org.springframework.context.ApplicationContext;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 20:15
+ * Description: 通过正常的新增秒杀券流程准备数据 数据库和redis中的库存同时写入
+ */
+public abstract class AbstractSeckillStrategy implements SeckillStrategy {
+
+    protected final ApplicationContext context;
+
+    private final IVoucherService voucherService;
+
+    protected AbstractSeckillStrategy(ApplicationContext context) {
+        this.context = context;
+        this.voucherService = context.getBean(IVoucherService.class);
+    }
+
+    @Override
+    public long prepare(int stock) {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("benchmark");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(200L);
+        voucher.setType(1);
+        voucher.setStock(stock);
+        voucher.setBeginTime(LocalDateTime.now().minusMinutes(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        voucher.setSegments(segments());
+        voucherService.addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+
+    /**
+     * @return redis库存分段数 默认不分段
+     */
+    protected Integer segments() {
+        return null;
+    }
+}
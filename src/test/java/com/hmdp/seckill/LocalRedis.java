@@ -0,0 +1,39 @@
+package com.hmdp.seckill;
+
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 20:05
+ * Description: 进程内启动的redis 端口与 application-test.yaml 一致 同一个JVM中只启动一次
+ */
+public final class LocalRedis {
+
+    public static final int PORT = 6399;
+
+    private static RedisServer server;
+
+    private LocalRedis() {
+    }
+
+    public static synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = RedisServer.newRedisServer()
+                .port(PORT)
+                .setting("bind 127.0.0.1")
+                .setting("save \"\"")
+                .build();
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+            } catch (IOException ignored) {
+                //JVM退出时进程会被一起结束
+            }
+        }));
+    }
+}
@@ -0,0 +1,67 @@
+package com.hmdp.seckill;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.UserHolder;
+import org.springframework.context.ApplicationContext;
+
+import java.time.Duration;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 20:35
+ * Description: 当前的下单方式 VoucherOrderServiceImpl.seckillVoucher
+ * lua脚本在redis中判断资格 订单经stream异步批量写入数据库
+ */
+public class RedisStreamStrategy extends AbstractSeckillStrategy {
+
+    public static final String NAME = "redis-stream";
+
+    public static final String SEGMENTED_NAME = "redis-stream-segmented";
+
+    private final IVoucherOrderService voucherOrderService;
+
+    private final Integer segments;
+
+    public RedisStreamStrategy(ApplicationContext context, Integer segments) {
+        super(context);
+        this.voucherOrderService = context.getBean(IVoucherOrderService.class);
+        this.segments = segments;
+    }
+
+    @Override
+    public String name() {
+        return segments == null ? NAME : SEGMENTED_NAME;
+    }
+
+    @Override
+    protected Integer segments() {
+        return segments;
+    }
+
+    @Override
+    public boolean seckill(long voucherId, long userId) {
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        UserHolder.saveUser(user);
+        try {
+            Result result = voucherOrderService.seckillVoucher(voucherId);
+            return Boolean.TRUE.equals(result.getSuccess());
+        } finally {
+            UserHolder.removeUser();
+        }
+    }
+
+    @Override
+    public boolean awaitPersisted(long voucherId, long expectedOrders, Duration timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        while (System.currentTimeMillis() < deadline) {
+            if (voucherOrderService.query().eq("voucher_id", voucherId).count() >= expectedOrders) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
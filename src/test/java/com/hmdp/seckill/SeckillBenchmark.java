@@ -0,0 +1,136 @@
+package com.hmdp.seckill;
+
+import com.hmdp.HmDianPingApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 21:00
+ * Description: 秒杀下单基准测试 使用H2和进程内redis 比较不同的下单实现
+ * throughput输出吞吐量 latency输出p50/p99/p999延迟 每轮结束后校验是否超卖或重复下单 不正确时该轮失败
+ * 运行: 在IDE中执行main 可以追加JMH命令行参数 例如 -p strategy=redis-stream -wi 1 -i 2
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(16)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class SeckillBenchmark {
+
+    @Param({SynchronizedDbStrategy.NAME, RedisStreamStrategy.NAME, RedisStreamStrategy.SEGMENTED_NAME})
+    private String strategy;
+
+    /**
+     * 每轮的库存
+     */
+    @Param({"2000"})
+    private int stock;
+
+    /**
+     * 参与抢购的用户数 每次随机选择一个用户 同一用户会多次抢购
+     */
+    @Param({"10000"})
+    private int users;
+
+    private ConfigurableApplicationContext context;
+
+    private SeckillStrategy seckillStrategy;
+
+    private SeckillVerifier verifier;
+
+    private long voucherId;
+
+    private final LongAdder accepted = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        LocalRedis.start();
+        context = new SpringApplicationBuilder(HmDianPingApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .run();
+        seckillStrategy = SeckillStrategies.create(strategy, context);
+        verifier = new SeckillVerifier(context.getBean(JdbcTemplate.class));
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        voucherId = seckillStrategy.prepare(stock);
+        accepted.reset();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean throughput() {
+        return seckill();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean latency() {
+        return seckill();
+    }
+
+    private boolean seckill() {
+        long userId = ThreadLocalRandom.current().nextLong(users) + 1;
+        boolean success = seckillStrategy.seckill(voucherId, userId);
+        if (success) {
+            accepted.increment();
+        }
+        return success;
+    }
+
+    @TearDown(Level.Iteration)
+    public void verifyIteration() throws InterruptedException {
+        long count = accepted.sum();
+        if (!seckillStrategy.awaitPersisted(voucherId, count, Duration.ofMinutes(1))) {
+            throw new IllegalStateException(strategy + " 订单未能在超时前写入数据库");
+        }
+        SeckillVerifier.Verification verification = verifier.verify(voucherId, stock, count);
+        log.info("{} {}", strategy, verification);
+        if (!verification.isCorrect()) {
+            throw new IllegalStateException(strategy + " 超卖或重复下单 " + verification);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        context.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(SeckillBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
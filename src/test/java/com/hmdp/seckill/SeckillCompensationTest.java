@@ -0,0 +1,109 @@
+package com.hmdp.seckill;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillStockManager;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 售罄后订单在数据库中写入失败 库存归还 售罄标记被清除 下一个用户可以抢到归还的库存
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class SeckillCompensationTest {
+
+    @Resource
+    private ApplicationContext context;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        LocalRedis.start();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {RedisStreamStrategy.NAME, RedisStreamStrategy.SEGMENTED_NAME})
+    void returnedStockCanBeSoldAgain(String name) throws InterruptedException {
+        SeckillStrategy strategy = SeckillStrategies.create(name, context);
+        long voucherId = strategy.prepare(1);
+        long first = 1001;
+        long second = 1002;
+        //数据库中已经有first的订单 redis中没有记录 first的订单写入时会被当作重复下单放弃
+        jdbcTemplate.update("insert into tb_voucher_order(id, user_id, voucher_id, pay_type, status) values (?, ?, ?, 1, 1)",
+                voucherId * 10, first, voucherId);
+
+        //1 first抢到唯一的库存 second看到售罄 各节点标记售罄
+        Result accepted = seckill(voucherId, first);
+        assertTrue(accepted.getSuccess());
+        assertFalse(seckill(voucherId, second).getSuccess());
+        assertEquals(SeckillStockManager.OUT_OF_STOCK, seckillSoldOutRegistry.finishedReason(voucherId));
+
+        //2 消费者放弃first的订单 归还库存并清除售罄标记
+        Long orderId = (Long) accepted.getData();
+        assertTrue(await(() -> !query(orderId, first).getSuccess()), "订单没有被放弃");
+        assertTrue(await(() -> seckillSoldOutRegistry.finishedReason(voucherId) == null), "售罄标记没有清除");
+
+        //3 second抢到归还的库存 订单写入数据库
+        Result retry = seckill(voucherId, second);
+        assertTrue(retry.getSuccess(), retry.getErrorMsg());
+        assertTrue(await(() -> query((Long) retry.getData(), second).getData() != null), "订单未能在超时前写入数据库");
+        assertEquals(0, jdbcTemplate.queryForObject("select stock from tb_seckill_voucher where voucher_id = ?", Integer.class, voucherId));
+    }
+
+    private Result seckill(long voucherId, long userId) {
+        return asUser(userId, () -> voucherOrderService.seckillVoucher(voucherId));
+    }
+
+    private Result query(long orderId, long userId) {
+        return asUser(userId, () -> voucherOrderService.queryOrder(orderId));
+    }
+
+    private static Result asUser(long userId, Supplier<Result> action) {
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        UserHolder.saveUser(user);
+        try {
+            return action.get();
+        } finally {
+            UserHolder.removeUser();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + Duration.ofSeconds(10).toMillis();
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
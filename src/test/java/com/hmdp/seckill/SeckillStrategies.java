@@ -0,0 +1,31 @@
+package com.hmdp.seckill;
+
+import org.springframework.context.ApplicationContext;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 20:40
+ * Description: 按名称创建下单实现 新增实现时在这里注册
+ */
+public final class SeckillStrategies {
+
+    public static final String[] NAMES = {
+            SynchronizedDbStrategy.NAME, RedisStreamStrategy.NAME, RedisStreamStrategy.SEGMENTED_NAME
+    };
+
+    private SeckillStrategies() {
+    }
+
+    public static SeckillStrategy create(String name, ApplicationContext context) {
+        switch (name) {
+            case SynchronizedDbStrategy.NAME:
+                return new SynchronizedDbStrategy(context);
+            case RedisStreamStrategy.NAME:
+                return new RedisStreamStrategy(context, null);
+            case RedisStreamStrategy.SEGMENTED_NAME:
+                return new RedisStreamStrategy(context, 4);
+            default:
+                throw new IllegalArgumentException("未知的下单实现 " + name);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.hmdp.seckill;
+
+import java.time.Duration;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 20:10
+ * Description: 秒杀下单的一种实现 基准测试和压力测试通过这个接口比较不同的实现
+ */
+public interface SeckillStrategy {
+
+    String name();
+
+    /**
+     * 新建一张正在秒杀中的秒杀券
+     *
+     * @param stock 库存
+     * @return 秒杀券id
+     */
+    long prepare(int stock);
+
+    /**
+     * 用户抢购一次
+     *
+     * @return 是否抢购成功
+     */
+    boolean seckill(long voucherId, long userId);
+
+    /**
+     * 等待抢购成功的订单全部写入数据库 同步下单的实现直接返回
+     *
+     * @param expectedOrders 抢购成功的次数
+     * @return 是否在超时前全部写入
+     */
+    default boolean awaitPersisted(long voucherId, long expectedOrders, Duration timeout) throws InterruptedException {
+        return true;
+    }
+}
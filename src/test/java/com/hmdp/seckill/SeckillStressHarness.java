@@ -0,0 +1,91 @@
+package com.hmdp.seckill;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author wzh
+ * @date 2024年01月12日 19:30
+ * Description: 秒杀并发压力测试 大量虚拟用户同时抢购并重复尝试 结束后校验没有超卖和重复下单 并统计吞吐量
+ */
+public class SeckillStressHarness {
+
+    private final SeckillVerifier verifier;
+
+    public SeckillStressHarness(SeckillVerifier verifier) {
+        this.verifier = verifier;
+    }
+
+    /**
+     * @param users    虚拟用户数 用户id从1开始
+     * @param stock    库存
+     * @param attempts 每个用户抢购的次数
+     * @param threads  并发线程数
+     */
+    public Report run(SeckillStrategy strategy, int users, int stock, int attempts, int threads) throws InterruptedException {
+        long voucherId = strategy.prepare(stock);
+        LongAdder accepted = new LongAdder();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(users * attempts);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        //同一用户的多次尝试打散提交 让重复抢购真正并发
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            for (long userId = 1; userId <= users; userId++) {
+                long user = userId;
+                executor.submit(() -> {
+                    try {
+                        start.await();
+                        if (strategy.seckill(voucherId, user)) {
+                            accepted.increment();
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        if (error.get() != null) {
+            throw new IllegalStateException(strategy.name() + " 抢购时出现异常", error.get());
+        }
+
+        Report report = new Report();
+        report.setStrategy(strategy.name());
+        report.setRequests((long) users * attempts);
+        report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        report.setThroughput(report.getRequests() * 1_000_000_000D / elapsed);
+        report.setPersisted(strategy.awaitPersisted(voucherId, accepted.sum(), Duration.ofMinutes(1)));
+        report.setVerification(verifier.verify(voucherId, stock, accepted.sum()));
+        return report;
+    }
+
+    @Data
+    public static class Report {
+        private String strategy;
+        private long requests;
+        private long elapsedMillis;
+        /**
+         * 每秒处理的抢购请求数
+         */
+        private double throughput;
+        /**
+         * 异步下单是否在超时前全部写入数据库
+         */
+        private boolean persisted;
+        private SeckillVerifier.Verification verification;
+    }
+}
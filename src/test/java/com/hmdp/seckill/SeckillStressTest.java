@@ -0,0 +1,77 @@
+package com.hmdp.seckill;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每种下单实现都在并发下校验 订单数 == 初始库存 - 剩余库存 且同一用户没有重复订单
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class SeckillStressTest {
+
+    @Resource
+    private ApplicationContext context;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        LocalRedis.start();
+    }
+
+    static Stream<String> strategies() {
+        return Stream.of(SeckillStrategies.NAMES);
+    }
+
+    /**
+     * 用户数远大于库存 必须恰好卖完 不能超卖
+     */
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void noOversell(String name) throws InterruptedException {
+        SeckillStressHarness.Report report = run(name, 500, 100, 3);
+        assertEquals(0, report.getVerification().getRemainingStock());
+        assertEquals(100, report.getVerification().getOrders());
+    }
+
+    /**
+     * 库存充足 每个用户重复抢购 每人只能有一单
+     */
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void noDuplicateOrder(String name) throws InterruptedException {
+        SeckillStressHarness.Report report = run(name, 50, 100, 5);
+        assertEquals(50, report.getVerification().getOrders());
+        assertEquals(50, report.getVerification().getRemainingStock());
+    }
+
+    private SeckillStressHarness.Report run(String name, int users, int stock, int attempts) throws InterruptedException {
+        SeckillStrategy strategy = SeckillStrategies.create(name, context);
+        SeckillStressHarness harness = new SeckillStressHarness(new SeckillVerifier(jdbcTemplate));
+        SeckillStressHarness.Report report = harness.run(strategy, users, stock, attempts, 32);
+        log.info("{}", report);
+        assertTrue(report.isPersisted(), "订单未能在超时前写入数据库");
+        SeckillVerifier.Verification verification = report.getVerification();
+        assertEquals(verification.getInitialStock() - verification.getRemainingStock(), verification.getOrders());
+        assertEquals(verification.getAccepted(), verification.getOrders());
+        assertEquals(0, verification.getDuplicateUsers());
+        assertTrue(verification.isCorrect());
+        return report;
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.seckill;
+
+import lombok.Data;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 20:45
+ * Description: 校验一张秒杀券的下单结果 订单数等于扣减的库存 没有超卖 同一用户没有重复订单
+ */
+public class SeckillVerifier {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SeckillVerifier(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param accepted 返回抢购成功的次数
+     */
+    public Verification verify(long voucherId, int initialStock, long accepted) {
+        Verification verification = new Verification();
+        verification.setVoucherId(voucherId);
+        verification.setInitialStock(initialStock);
+        verification.setAccepted(accepted);
+        verification.setRemainingStock(jdbcTemplate.queryForObject(
+                "SELECT stock FROM tb_seckill_voucher WHERE voucher_id = ?", Integer.class, voucherId));
+        verification.setOrders(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM tb_voucher_order WHERE voucher_id = ?", Long.class, voucherId));
+        verification.setDuplicateUsers(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT user_id FROM tb_voucher_order WHERE voucher_id = ? " +
+                        "GROUP BY user_id HAVING COUNT(*) > 1) t", Long.class, voucherId));
+        return verification;
+    }
+
+    @Data
+    public static class Verification {
+        private long voucherId;
+        private int initialStock;
+        private long accepted;
+        private int remainingStock;
+        private long orders;
+        private long duplicateUsers;
+
+        /**
+         * @return 订单数等于扣减的库存和抢购成功的次数 库存没有扣成负数 没有重复订单
+         */
+        public boolean isCorrect() {
+            return orders == initialStock - remainingStock && orders == accepted
+                    && remainingStock >= 0 && duplicateUsers == 0;
+        }
+    }
+}
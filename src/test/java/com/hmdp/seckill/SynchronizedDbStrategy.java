@@ -0,0 +1,80 @@
+package com.hmdp.seckill;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.IdGenerator;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author wzh
+ * @date 2024年01月10日 20:25
+ * Description: 最初的下单方式 每次查询数据库判断时间和库存 单机synchronized保证一人一单 同步写入订单
+ */
+public class SynchronizedDbStrategy extends AbstractSeckillStrategy {
+
+    public static final String NAME = "synchronized-db";
+
+    private final ISeckillVoucherService seckillVoucherService;
+
+    private final IVoucherOrderService voucherOrderService;
+
+    private final IdGenerator idGenerator;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public SynchronizedDbStrategy(ApplicationContext context) {
+        super(context);
+        this.seckillVoucherService = context.getBean(ISeckillVoucherService.class);
+        this.voucherOrderService = context.getBean(IVoucherOrderService.class);
+        this.idGenerator = context.getBean(IdGenerator.class);
+        this.transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean seckill(long voucherId, long userId) {
+        //1 查询数据库 判断时间和库存
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        LocalDateTime now = LocalDateTime.now();
+        if (voucher == null || now.isBefore(voucher.getBeginTime()) || now.isAfter(voucher.getEndTime())) {
+            return false;
+        }
+        if (voucher.getStock() < 1) {
+            return false;
+        }
+        //2 按用户加锁 事务提交后才释放
+        synchronized (Long.toString(userId).intern()) {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> createOrder(voucherId, userId)));
+        }
+    }
+
+    private boolean createOrder(long voucherId, long userId) {
+        int count = voucherOrderService.query().eq("user_id", userId).eq("voucher_id", voucherId).count();
+        if (count > 0) {
+            return false;
+        }
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - 1")
+                .eq("voucher_id", voucherId)
+                .gt("stock", 0)
+                .update();
+        if (!success) {
+            return false;
+        }
+        VoucherOrder order = new VoucherOrder();
+        order.setId(idGenerator.nextId("order"));
+        order.setUserId(userId);
+        order.setVoucherId(voucherId);
+        return voucherOrderService.save(order);
+    }
+}
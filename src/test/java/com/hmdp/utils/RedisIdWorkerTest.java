@@ -0,0 +1,105 @@
+package com.hmdp.utils;
+
+import com.hmdp.seckill.LocalRedis;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 号段模式下多线程 多节点共用同一个序列号key 生成的id不能重复
+ * 号段设置得很小 让切换号段和异步预取在测试中频繁发生
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class RedisIdWorkerTest {
+
+    private static final int THREADS = 16;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        LocalRedis.start();
+    }
+
+    @Test
+    void segmentIdsAreUniqueAcrossThreadsAndNodes() throws Exception {
+        RedisIdWorker node1 = newWorker(true, 7);
+        RedisIdWorker node2 = newWorker(true, 13);
+        try {
+            Set<Long> ids = generate(new RedisIdWorker[]{node1, node2}, "segment-test", 20000);
+            assertEquals(THREADS * 20000, ids.size());
+        } finally {
+            node1.destroy();
+            node2.destroy();
+        }
+    }
+
+    @Test
+    void segmentAndIncrementModesShareTheSequence() throws Exception {
+        //滚动发布时新旧两种模式的节点同时运行 序列号都来自同一个key
+        RedisIdWorker segment = newWorker(true, 11);
+        RedisIdWorker increment = newWorker(false, 1);
+        try {
+            Set<Long> ids = generate(new RedisIdWorker[]{segment, increment}, "mixed-test", 2000);
+            assertEquals(THREADS * 2000, ids.size());
+        } finally {
+            segment.destroy();
+            increment.destroy();
+        }
+    }
+
+    /**
+     * 每个线程轮流使用其中一个节点 所有线程同时开始
+     */
+    private Set<Long> generate(RedisIdWorker[] nodes, String keyPrefix, int perThread) throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            RedisIdWorker node = nodes[i % nodes.length];
+            futures[i] = pool.submit(() -> {
+                start.await();
+                for (int j = 0; j < perThread; j++) {
+                    long id = node.nextId(keyPrefix);
+                    assertTrue(id > 0);
+                    assertTrue(ids.add(id), "重复的id " + id);
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        return ids;
+    }
+
+    private RedisIdWorker newWorker(boolean segmentEnabled, long step) {
+        RedisIdWorker worker = new RedisIdWorker();
+        ReflectionTestUtils.setField(worker, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(worker, "segmentEnabled", segmentEnabled);
+        ReflectionTestUtils.setField(worker, "step", step);
+        ReflectionTestUtils.setField(worker, "prefetchRatio", 0.5);
+        return worker;
+    }
+}
@@ -0,0 +1,172 @@
+package com.hmdp.utils;
+
+import com.hmdp.seckill.LocalRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 可重入 只有持有者能释放 看门狗续期到释放为止 多个节点竞争时互斥
+ * 每个RedisLockFactory模拟一个节点 看门狗有效期设置得很短 测试中能观察到多次续期
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+class RedisLockTest {
+
+    private static final long WATCHDOG_TIMEOUT = 300;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private RedisLockFactory node1;
+
+    private RedisLockFactory node2;
+
+    private String name;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        LocalRedis.start();
+    }
+
+    @BeforeEach
+    void setUp() {
+        node1 = new RedisLockFactory(stringRedisTemplate, WATCHDOG_TIMEOUT, 10);
+        node2 = new RedisLockFactory(stringRedisTemplate, WATCHDOG_TIMEOUT, 10);
+        name = "lock:test:" + System.nanoTime();
+    }
+
+    @AfterEach
+    void tearDown() {
+        node1.destroy();
+        node2.destroy();
+        stringRedisTemplate.delete(name);
+    }
+
+    @Test
+    void reentrantUntilReleasedAsManyTimes() throws Exception {
+        ILock lock = node1.getLock(name);
+        assertTrue(lock.tryLock());
+        assertTrue(lock.tryLock());
+        assertFalse(tryLockInOtherThread(node1));
+        assertFalse(tryLockInOtherThread(node2));
+
+        lock.unlock();
+        assertTrue(stringRedisTemplate.hasKey(name));
+        assertFalse(tryLockInOtherThread(node2));
+
+        lock.unlock();
+        assertFalse(stringRedisTemplate.hasKey(name));
+        assertEquals(0, node1.renewingCount());
+        assertThrows(IllegalMonitorStateException.class, lock::unlock);
+    }
+
+    @Test
+    void onlyOwnerCanUnlock() throws Exception {
+        assertTrue(node1.getLock(name).tryLock());
+        try {
+            assertThrows(IllegalMonitorStateException.class, () -> node2.getLock(name).unlock());
+            //同一节点的其他线程也不是持有者
+            Future<?> otherThread = CompletableFuture.runAsync(() ->
+                    assertThrows(IllegalMonitorStateException.class, () -> node1.getLock(name).unlock()));
+            otherThread.get(5, TimeUnit.SECONDS);
+            assertTrue(stringRedisTemplate.hasKey(name));
+        } finally {
+            node1.getLock(name).unlock();
+        }
+    }
+
+    @Test
+    void watchdogRenewsUntilUnlock() throws Exception {
+        ILock lock = node1.getLock(name);
+        assertTrue(lock.tryLock());
+        assertEquals(1, node1.renewingCount());
+        //持有时间远超有效期 锁仍然存在
+        Thread.sleep(WATCHDOG_TIMEOUT * 4);
+        Long ttl = stringRedisTemplate.getExpire(name, TimeUnit.MILLISECONDS);
+        assertTrue(ttl != null && ttl > 0);
+        assertFalse(tryLockInOtherThread(node2));
+
+        lock.unlock();
+        assertEquals(0, node1.renewingCount());
+        assertFalse(stringRedisTemplate.hasKey(name));
+    }
+
+    @Test
+    void explicitLeaseTimeIsNotRenewed() throws Exception {
+        ILock lock = node1.getLock(name);
+        assertTrue(lock.tryLock(0, WATCHDOG_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, node1.renewingCount());
+        Thread.sleep(WATCHDOG_TIMEOUT * 2);
+        assertFalse(stringRedisTemplate.hasKey(name));
+        assertTrue(tryLockInOtherThread(node2));
+    }
+
+    @Test
+    void mutualExclusionAcrossNodes() throws Exception {
+        int threads = 8;
+        int rounds = 100;
+        int[] counter = new int[1];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            RedisLockFactory node = i % 2 == 0 ? node1 : node2;
+            futures[i] = pool.submit(() -> {
+                start.await();
+                ILock lock = node.getLock(name);
+                for (int j = 0; j < rounds; j++) {
+                    assertTrue(lock.tryLock(10, -1, TimeUnit.SECONDS));
+                    try {
+                        //非原子的读改写 没有互斥时会丢失更新
+                        int value = counter[0];
+                        Thread.yield();
+                        counter[0] = value + 1;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertEquals(threads * rounds, counter[0]);
+        assertEquals(0, node1.renewingCount() + node2.renewingCount());
+    }
+
+    /**
+     * 在另一个线程中不等待地尝试加锁 成功时立即释放
+     */
+    private boolean tryLockInOtherThread(RedisLockFactory node) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            ILock lock = node.getLock(name);
+            if (!lock.tryLock()) {
+                return false;
+            }
+            lock.unlock();
+            return true;
+        }).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,114 @@
+package com.hmdp.utils;
+
+import com.hmdp.seckill.LocalRedis;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * hmdp.id.generator=snowflake时 同一节点多线程生成的id不重复且每个线程内递增 多个节点租用不同的worker id
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = "hmdp.id.generator=snowflake")
+@ActiveProfiles("test")
+class SnowflakeIdGeneratorTest {
+
+    private static final int THREADS = 16;
+
+    @Resource
+    private IdGenerator idGenerator;
+
+    @Resource
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        LocalRedis.start();
+    }
+
+    @Test
+    void replacesRedisIdWorker() {
+        assertSame(snowflakeIdGenerator, idGenerator);
+    }
+
+    @Test
+    void concurrentIdsAreUniqueAndIncreasing() throws Exception {
+        Set<Long> ids = generate(new SnowflakeIdGenerator[]{snowflakeIdGenerator}, 100000);
+        assertEquals(THREADS * 100000, ids.size());
+    }
+
+    @Test
+    void nodesLeaseDifferentWorkerIds() throws Exception {
+        SnowflakeIdGenerator other = newNode();
+        try {
+            assertNotEquals(snowflakeIdGenerator.getWorkerId(), other.getWorkerId());
+            Set<Long> ids = generate(new SnowflakeIdGenerator[]{snowflakeIdGenerator, other}, 50000);
+            assertEquals(THREADS * 50000, ids.size());
+        } finally {
+            ReflectionTestUtils.invokeMethod(other, "shutdown");
+        }
+    }
+
+    /**
+     * 每个线程轮流使用其中一个节点 所有线程同时开始
+     */
+    private Set<Long> generate(SnowflakeIdGenerator[] nodes, int perThread) throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            SnowflakeIdGenerator node = nodes[i % nodes.length];
+            futures[i] = pool.submit(() -> {
+                start.await();
+                long previous = 0;
+                for (int j = 0; j < perThread; j++) {
+                    long id = node.nextId("order");
+                    assertTrue(id > previous, "id没有递增 " + previous + " -> " + id);
+                    assertTrue(ids.add(id), "重复的id " + id);
+                    previous = id;
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        return ids;
+    }
+
+    /**
+     * 模拟另一个节点 与容器中的生成器共用redis中的worker id租约
+     */
+    private SnowflakeIdGenerator newNode() {
+        SnowflakeIdGenerator node = new SnowflakeIdGenerator();
+        ReflectionTestUtils.setField(node, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(node, "leaseTtl", 30000L);
+        ReflectionTestUtils.setField(node, "heartbeat", 10000L);
+        ReflectionTestUtils.setField(node, "maxWait", 5L);
+        ReflectionTestUtils.invokeMethod(node, "init");
+        return node;
+    }
+}